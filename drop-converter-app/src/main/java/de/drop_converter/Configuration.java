@@ -13,12 +13,15 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 
 import javax.swing.JButton;
 import javax.swing.JComboBox;
@@ -27,6 +30,9 @@ import javax.swing.JPanel;
 import javax.swing.UIManager;
 import javax.swing.UIManager.LookAndFeelInfo;
 
+import de.drop_converter.conversion.ResultCache;
+import de.drop_converter.plugin.StreamingConverterPlugin;
+
 /**
  * Configuration store.
  * 
@@ -42,6 +48,15 @@ public class Configuration
   private final static String KEY_LOOK_AND_FEEL = "look_and_feel";
   private final static String KEY_DISABLED_PLUGINS = "disabled_plugins";
   private final static String KEY_WINDOW_POSITION = "window_position";
+  private final static String KEY_CONVERSION_THREADS = "conversion_threads";
+  private final static String KEY_CONVERSION_QUEUE_SIZE = "conversion_queue_size";
+  private final static String KEY_AUTO_ROUTING = "auto_routing";
+  private final static String KEY_PIPELINE_PREFIX = "pipeline.";
+  private final static String KEY_PIPELINE_BUFFER_SIZE = "pipeline_buffer_size";
+  private final static String KEY_RESULT_CACHE_SIZE = "result_cache_size";
+  private final static String KEY_INCREMENTAL_CONVERSION = "incremental_conversion";
+  private final static String KEY_WARM_PLUGINS = "warm_plugins";
+  private final static String KEY_WARM_PLUGINS_HEAP_BUDGET = "warm_plugins_heap_budget";
 
   private final File configurationFile;
 
@@ -148,9 +163,9 @@ public class Configuration
   }
 
   /**
-   * detect all not initialized plugins and save it in the configuration delimited by a comma.
+   * detect all plugins that are disabled by the user and save it in the configuration delimited by a comma.
    * 
-   * @param plugins is a collection of plugins that should be scanned for not initialized plugins.
+   * @param plugins is a collection of plugins that should be scanned for disabled plugins.
    */
   public void setDisabledPlugins(Collection<PluginWrapper> plugins)
   {
@@ -166,9 +181,9 @@ public class Configuration
       while (true)
       {
         PluginWrapper p = it.next();
-        if (!p.isPluginInitialized())
+        if (p.isPluginExcluded())
         {
-          sb.append(p.getPlugin().getClass().getName());
+          sb.append(p.getPluginClassName());
           sb.append(',');
         }
         if (!it.hasNext())
@@ -180,6 +195,163 @@ public class Configuration
     }
   }
 
+  /**
+   * Return the number of conversions that can run at the same time. Default is the number of available processors.
+   *
+   * @return the number of conversion worker threads.
+   */
+  public int getConversionThreads()
+  {
+    return getIntProperty(KEY_CONVERSION_THREADS, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Return the number of drops that can wait for a free conversion worker. Default is 16.
+   *
+   * @return the size of the conversion queue.
+   */
+  public int getConversionQueueSize()
+  {
+    return getIntProperty(KEY_CONVERSION_QUEUE_SIZE, 16);
+  }
+
+  /**
+   * Check if drops should be routed to a plugin that declared the dropped MIME type instead of the selected plugin.
+   * Default is false.
+   *
+   * @return true if the plugin should be chosen automatically.
+   */
+  public boolean isAutoRouting()
+  {
+    return Boolean.parseBoolean(props.getProperty(KEY_AUTO_ROUTING, "false").trim());
+  }
+
+  public void setAutoRouting(boolean autoRouting)
+  {
+    props.setProperty(KEY_AUTO_ROUTING, String.valueOf(autoRouting));
+  }
+
+  /**
+   * Check if only the new and modified files of a dropped directory should be converted. Default is false.
+   *
+   * @return true if unchanged files should be skipped.
+   */
+  public boolean isIncrementalConversion()
+  {
+    return Boolean.parseBoolean(props.getProperty(KEY_INCREMENTAL_CONVERSION, "false").trim());
+  }
+
+  public void setIncrementalConversion(boolean incrementalConversion)
+  {
+    props.setProperty(KEY_INCREMENTAL_CONVERSION, String.valueOf(incrementalConversion));
+  }
+
+  /**
+   * Return the number of deselected plugins that stay enabled, so switching back to them is instant. Default is 2, 0
+   * disables a plugin as soon as it is deselected.
+   *
+   * @return the number of warm plugins.
+   */
+  public int getWarmPlugins()
+  {
+    String property = props.getProperty(KEY_WARM_PLUGINS);
+    if (property != null && "0".equals(property.trim()))
+    {
+      return 0;
+    }
+    return getIntProperty(KEY_WARM_PLUGINS, 2);
+  }
+
+  /**
+   * Return the share of the maximum heap the live data may use before the warm plugins are disabled. Default is 70.
+   *
+   * @return the heap budget in percent.
+   */
+  public int getWarmPluginsHeapBudget()
+  {
+    return Math.min(100, getIntProperty(KEY_WARM_PLUGINS_HEAP_BUDGET, 70));
+  }
+
+  /**
+   * Return the pipelines defined by the user. A pipeline is defined as
+   * <code>pipeline.&lt;name&gt;=&lt;plugin&gt;,&lt;plugin&gt;,...</code> where each plugin is given by its name or class
+   * name.
+   *
+   * @return the stages of each pipeline by the pipeline name, sorted by the name.
+   */
+  public Map<String, List<String>> getPipelines()
+  {
+    Map<String, List<String>> pipelines = new TreeMap<>();
+    for (String key : props.stringPropertyNames())
+    {
+      if (key.startsWith(KEY_PIPELINE_PREFIX) && key.length() > KEY_PIPELINE_PREFIX.length())
+      {
+        List<String> stages = new ArrayList<>();
+        for (String stage : props.getProperty(key).split(","))
+        {
+          if (!stage.trim().isEmpty())
+          {
+            stages.add(stage.trim());
+          }
+        }
+        if (!stages.isEmpty())
+        {
+          pipelines.put(key.substring(KEY_PIPELINE_PREFIX.length()), stages);
+        }
+      }
+    }
+    return pipelines;
+  }
+
+  /**
+   * Return the size of the pipes between the stages of a pipeline. Default is four chunks of a streaming plugin.
+   *
+   * @return the buffer size in bytes.
+   */
+  public int getPipelineBufferSize()
+  {
+    return getIntProperty(KEY_PIPELINE_BUFFER_SIZE, 4 * StreamingConverterPlugin.CHUNK_SIZE);
+  }
+
+  /**
+   * Return the size limit of the cache for the outputs of cacheable plugins. The limit is configured in megabytes,
+   * default is 256.
+   *
+   * @return the size limit in bytes.
+   */
+  public long getResultCacheSize()
+  {
+    return getIntProperty(KEY_RESULT_CACHE_SIZE, (int) (ResultCache.DEFAULT_MAX_SIZE / (1024 * 1024))) * 1024L * 1024L;
+  }
+
+  /**
+   * Read a positive integer property.
+   *
+   * @param key is the property key.
+   * @param defaultValue will be returned if the property is missing or invalid.
+   * @return the configured value or the default value.
+   */
+  private int getIntProperty(String key, int defaultValue)
+  {
+    String property = props.getProperty(key);
+    if (property != null)
+    {
+      try
+      {
+        int value = Integer.parseInt(property.trim());
+        if (value > 0)
+        {
+          return value;
+        }
+      }
+      catch (NumberFormatException e)
+      {
+        // use the default value
+      }
+    }
+    return defaultValue;
+  }
+
   /**
    * Store the actual configuration to a file.
    * 
@@ -8,34 +8,55 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
 import java.awt.HeadlessException;
 import java.awt.Image;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.MalformedURLException;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
-import java.net.URLClassLoader;
-import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
 import javax.imageio.ImageIO;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JSeparator;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 
 import de.drop_converter.components.ContextMenu;
+import de.drop_converter.components.JConversionProgress;
 import de.drop_converter.components.JDropableComponent;
 import de.drop_converter.components.JPluginComboBox;
+import de.drop_converter.components.JPluginTargetMenu;
+import de.drop_converter.components.actions.AutoRoutingContext;
 import de.drop_converter.components.actions.ExitContext;
+import de.drop_converter.components.actions.IncrementalContext;
 import de.drop_converter.components.actions.SettingsContext;
+import de.drop_converter.conversion.ConversionEngine;
+import de.drop_converter.conversion.ManifestStore;
+import de.drop_converter.conversion.ResultCache;
+import de.drop_converter.headless.BatchConverter;
+import de.drop_converter.management.Management;
 
 /**
  * Main executable class. Provide the GUI and initialization.
@@ -60,7 +81,19 @@ public class Converter extends JFrame
 
   private final PluginHandler pluginHandler;
 
+  private final PluginRouter pluginRouter;
+
   private final JDropableComponent dropComponent;
+  private final JConversionProgress progressView = new JConversionProgress();
+  private final ManifestStore manifestStore = new ManifestStore(CONVERTER_MANIFEST_DIR);
+
+  private final ConversionEngine conversionEngine;
+
+  // the plugins are loaded in the background, dispose needs to wait for it
+  private final Future<?> pluginsLoaded;
+
+  // only touched on the EDT
+  private boolean shutdownStarted;
 
   /*
    * Configuration
@@ -73,8 +106,16 @@ public class Converter extends JFrame
 
   public final static File CONVERTER_LOGGING_DIR = new File(CONVERTER_BASE_DIR, "logging");
 
+  public final static File CONVERTER_OUTPUT_DIR = new File(CONVERTER_BASE_DIR, "output");
+
+  public final static File CONVERTER_CACHE_DIR = new File(CONVERTER_BASE_DIR, "cache");
+
+  public final static File CONVERTER_MANIFEST_DIR = new File(CONVERTER_BASE_DIR, "manifests");
+
   public final static File CONFIGURATION_FILE = new File(CONVERTER_BASE_DIR, "settings.ini");
 
+  public final static File PLUGIN_INDEX_FILE = new File(CONVERTER_BASE_DIR, "plugin-index.properties");
+
   enum Position
   {
     UPPER_LEFT, UPPER, UPPER_RIGHT, RIGHT, LOWER_RIGHT, LOWER, LOWER_LEFT, LEFT
@@ -99,10 +140,40 @@ public class Converter extends JFrame
 
   public Converter()
   {
+    long start = System.currentTimeMillis();
+
     // init the directory structure for the converter (plugin, logging and
     // configuration directories)
     initDirectories();
+    logPhase("directories", start);
 
+    // the independent startup steps run in parallel to the creation of the window
+    ExecutorService startupExecutor = Executors.newFixedThreadPool(2, new ThreadFactory()
+    {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r)
+      {
+        Thread thread = new Thread(r, "startup-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    Future<Image> imageFuture = startupExecutor.submit(new Callable<Image>()
+    {
+      @Override
+      public Image call()
+      {
+        long phaseStart = System.currentTimeMillis();
+        Image image = loadImage();
+        logPhase("image", phaseStart);
+        return image;
+      }
+    });
+
+    long phaseStart = System.currentTimeMillis();
     try
     {
       config = new Configuration(CONFIGURATION_FILE);
@@ -112,47 +183,117 @@ public class Converter extends JFrame
       LOGGER.log(Level.SEVERE, "Could not initialize configuration", e1);
       System.exit(1);
     }
+    logPhase("configuration", phaseStart);
 
-    Image image = null;
-    URL resource = null;
-    try
+    pluginHandler = new PluginHandler();
+    pluginHandler.setPluginExclusion(config.getDisabledPlugins());
+    pluginsChooser = new JPluginComboBox(pluginHandler);
+    if (config.getWarmPlugins() > 0)
     {
-      resource = getClass().getResource("/images/dragdrop-150.png");
-      if (resource == null)
-      {
-        LOGGER.warning("Could not find drop-image.");
-        image = createFallbackImage();
-      }
-      else
+      pluginsChooser.setWarmPool(new PluginWarmPool(config.getWarmPlugins(), config.getWarmPluginsHeapBudget(),
+          pluginsChooser.getLifecycleExecutor()));
+    }
+    pluginRouter = new PluginRouter(pluginHandler);
+
+    // the plugin chooser is filled on the EDT while the plugins are loaded
+    pluginsLoaded = startupExecutor.submit(new Runnable()
+    {
+      @Override
+      public void run()
       {
-        image = ImageIO.read(resource);
+        loadPlugins();
       }
+    });
+    startupExecutor.shutdown();
+
+    phaseStart = System.currentTimeMillis();
+    conversionEngine = new ConversionEngine(config.getConversionThreads(), config.getConversionQueueSize(), ConversionEngine.EDT_EXECUTOR);
+    Management.register(conversionEngine, Management.conversionEngineName());
+    conversionEngine.setResultCache(new ResultCache(CONVERTER_CACHE_DIR, config.getResultCacheSize()));
+    if (config.isIncrementalConversion())
+    {
+      conversionEngine.setManifestStore(manifestStore);
     }
-    catch (IOException e)
+    dropComponent = new JDropableComponent(getImage(imageFuture), pluginsChooser, conversionEngine);
+    dropComponent.setProgressView(progressView);
+    if (config.isAutoRouting())
     {
-      LOGGER.log(Level.WARNING, "Could not parse drop-image from " + resource + ". Creating fallback image");
-      image = createFallbackImage();
+      dropComponent.setPluginRouter(pluginRouter);
     }
 
-    pluginHandler = new PluginHandler();
-    pluginHandler.setPluginExclusion(config.getDisabledPlugins());
-    pluginsChooser = new JPluginComboBox(pluginHandler);
-    dropComponent = new JDropableComponent(image, pluginsChooser);
-
     // init the gui (all components should be initialized before this call
     initGUI();
 
     // create the context menu and init the entries
     initContextMenu();
+    logPhase("gui", phaseStart);
+    logPhase("constructor", start);
+  }
+
+  /**
+   * Load the plugins from the plugin directory and watch it for changes.
+   */
+  private void loadPlugins()
+  {
+    long start = System.currentTimeMillis();
+    pluginHandler.loadPlugins(CONVERTER_PLUGIN_DIR, new PluginIndex(PLUGIN_INDEX_FILE));
+    for (Map.Entry<String, List<String>> pipeline : config.getPipelines().entrySet())
+    {
+      pluginHandler.registerPipeline(pipeline.getKey(), pipeline.getValue(), config.getPipelineBufferSize());
+    }
+    logPhase("plugins", start);
+
+    // added, replaced or deleted plugins will be loaded without restart
+    try
+    {
+      pluginHandler.watchPluginDirectory(CONVERTER_PLUGIN_DIR);
+    }
+    catch (IOException e)
+    {
+      LOGGER.log(Level.WARNING, "Could not watch the plugin directory. Plugins will only be loaded on startup.", e);
+    }
+  }
 
-    URLClassLoader pluginClassloader = loadPlugins();
+  private Image loadImage()
+  {
+    URL resource = null;
+    try
+    {
+      resource = getClass().getResource("/images/dragdrop-150.png");
+      if (resource == null)
+      {
+        LOGGER.warning("Could not find drop-image.");
+        return createFallbackImage();
+      }
+      return ImageIO.read(resource);
+    }
+    catch (IOException e)
+    {
+      LOGGER.log(Level.WARNING, "Could not parse drop-image from " + resource + ". Creating fallback image");
+      return createFallbackImage();
+    }
+  }
 
-    if (pluginClassloader != null)
+  private Image getImage(Future<Image> imageFuture)
+  {
+    try
+    {
+      return imageFuture.get();
+    }
+    catch (ExecutionException e)
+    {
+      LOGGER.log(Level.WARNING, "Could not load drop-image. Creating fallback image", e.getCause());
+    }
+    catch (InterruptedException e)
     {
-      pluginHandler.loadPlugins(pluginClassloader);
-      // pluginsChooser.reloadPlugins();
+      Thread.currentThread().interrupt();
     }
+    return createFallbackImage();
+  }
 
+  private void logPhase(String phase, long start)
+  {
+    LOGGER.fine("Startup phase " + phase + " took " + (System.currentTimeMillis() - start) + " ms");
   }
 
   /**
@@ -184,6 +325,7 @@ public class Converter extends JFrame
 
       add(pluginsChooser, BorderLayout.NORTH);
       add(dropComponent, BorderLayout.CENTER);
+      add(progressView, BorderLayout.SOUTH);
       pack();
       // alignment need to be done after pack
       alignWindow(getSize(), screenSize, position);
@@ -205,6 +347,7 @@ public class Converter extends JFrame
     checkDirectory(CONVERTER_BASE_DIR);
     checkDirectory(CONVERTER_PLUGIN_DIR);
     checkDirectory(CONVERTER_LOGGING_DIR);
+    checkDirectory(CONVERTER_OUTPUT_DIR);
   }
 
   /**
@@ -215,6 +358,9 @@ public class Converter extends JFrame
     ContextMenu contextMenu = new ContextMenu();
 
     contextMenu.addMenuEntry(new SettingsContext(this, pluginHandler));
+    contextMenu.addMenuEntry(new JCheckBoxMenuItem(new AutoRoutingContext(config, dropComponent, pluginRouter)));
+    contextMenu.addMenuEntry(new JCheckBoxMenuItem(new IncrementalContext(config, conversionEngine, manifestStore)));
+    contextMenu.addMenuEntry(new JPluginTargetMenu(pluginsChooser));
     contextMenu.addMenuEntry(new JSeparator());
     contextMenu.addMenuEntry(new ExitContext(this));
     dropComponent.setContextMenu(contextMenu);;
@@ -253,48 +399,6 @@ public class Converter extends JFrame
     }
   }
 
-  /**
-   * Load all plugins from the plugin directory
-   * 
-   * @return a URLClassLoader that contains all find plugins.
-   */
-  private URLClassLoader loadPlugins()
-  {
-    FilenameFilter jarFileFilter = new FilenameFilter()
-    {
-
-      @Override
-      public boolean accept(File dir, String name)
-      {
-        return name.endsWith(".jar");
-      }
-    };
-
-    // Search for plugins in the plugin directory and load it.
-    // TODO: Read also directories with complex plugin structures.
-    // TODO: Read also zip files for complex plugins.
-    // TODO: Seperate ClassLoader for each plugin.
-    File[] jarFiles = CONVERTER_PLUGIN_DIR.listFiles(jarFileFilter);
-
-    if (jarFiles.length > 0)
-    {
-      ArrayList<URL> urls = new ArrayList<URL>();
-      for (File pluginFile : jarFiles)
-      {
-        try
-        {
-          urls.add(pluginFile.toURI().toURL());
-        }
-        catch (MalformedURLException e)
-        {
-          LOGGER.warning("Could not load Plugin: " + pluginFile.getAbsolutePath());
-        }
-      }
-      return URLClassLoader.newInstance(urls.toArray(new URL[0]));
-    }
-    return null;
-  }
-
   /**
    * Align the converter window to a specific position on the screen.
    * 
@@ -373,15 +477,64 @@ public class Converter extends JFrame
     return image;
   }
 
+  /**
+   * Hide the window and shut down in the background. Waiting for the plugins and the running conversions would block
+   * the EDT, so the window is disposed when the shutdown is done.
+   */
   @Override
   public void dispose()
+  {
+    if (shutdownStarted)
+    {
+      return;
+    }
+    shutdownStarted = true;
+    setVisible(false);
+
+    // not a daemon, so the application stays alive until the shutdown is done
+    Thread shutdown = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        shutdown();
+        SwingUtilities.invokeLater(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            Converter.super.dispose();
+          }
+        });
+      }
+    }, "converter-shutdown");
+    shutdown.start();
+  }
+
+  /**
+   * Wait for the plugins and the running conversions, then destroy the plugins and store the configuration.
+   */
+  private void shutdown()
   {
     try
     {
+      // the exclusions of plugins that are not registered yet would get lost
+      awaitPlugins();
+
       // save the state of the plugins
       Set<PluginWrapper> plugins = pluginHandler.getPlugins();
       config.setDisabledPlugins(plugins);
 
+      // let the running conversions finish before the plugins will be destroyed
+      if (!conversionEngine.shutdown(30, TimeUnit.SECONDS))
+      {
+        LOGGER.warning("Conversions still running while shutting down the Converter.");
+      }
+      Management.unregister(Management.conversionEngineName());
+
+      // no plugin shall be enabled by the chooser while the plugins are destroyed
+      pluginsChooser.dispose();
+
       if (pluginHandler != null)
       {
         pluginHandler.dispose();
@@ -402,7 +555,35 @@ public class Converter extends JFrame
       e.printStackTrace();
     }
 
-    super.dispose();
+    // the log file is written in the background, so write the last records before the application ends
+    for (Handler handler : Logger.getLogger("").getHandlers())
+    {
+      handler.flush();
+    }
+  }
+
+  /**
+   * Wait until the plugins are loaded or cancel the loading if it takes too long.
+   */
+  private void awaitPlugins()
+  {
+    try
+    {
+      pluginsLoaded.get(30, TimeUnit.SECONDS);
+    }
+    catch (TimeoutException e)
+    {
+      LOGGER.warning("Plugins still loading while shutting down the Converter.");
+      pluginsLoaded.cancel(true);
+    }
+    catch (ExecutionException e)
+    {
+      LOGGER.log(Level.WARNING, "Loading the plugins failed.", e.getCause());
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
   }
 
   public Configuration getConfiguration()
@@ -417,7 +598,15 @@ public class Converter extends JFrame
 
   public static void main(String[] args)
   {
+    // run without GUI if arguments are given, e.g. on build servers
+    if (args.length > 0 || GraphicsEnvironment.isHeadless())
+    {
+      System.exit(BatchConverter.run(args));
+    }
+
     Converter converter = new Converter();
     converter.setVisible(true);
+    Logger.getLogger(Converter.class.getName()).info(
+        "Converter visible " + (System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime()) + " ms after the JVM start");
   }
 }
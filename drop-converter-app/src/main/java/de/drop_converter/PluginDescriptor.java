@@ -0,0 +1,126 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import de.drop_converter.plugin.ConverterPlugin;
+import de.drop_converter.plugin.annotations.ConverterPluginDetails;
+
+/**
+ * The details of a plugin. They can be obtained from the plugin class or from the plugin index without loading the
+ * plugin.
+ *
+ * @author Thomas Chojecki
+ */
+public final class PluginDescriptor
+{
+  private final String className;
+  private final String authorName;
+  private final String authorEmail;
+  private final String pluginName;
+  private final String pluginDescription;
+  private final String pluginVersion;
+  private final String pluginWebsite;
+  private final List<String> mimeTypes;
+  private final boolean threadSafe;
+  private final boolean cacheable;
+
+  public PluginDescriptor(String className, String authorName, String authorEmail, String pluginName, String pluginDescription, String pluginVersion,
+      String pluginWebsite, List<String> mimeTypes, boolean threadSafe,
+      boolean cacheable)
+  {
+    this.className = className;
+    this.authorName = authorName;
+    this.authorEmail = authorEmail;
+    this.pluginName = pluginName;
+    this.pluginDescription = pluginDescription;
+    this.pluginVersion = pluginVersion;
+    this.pluginWebsite = pluginWebsite;
+    this.mimeTypes = Collections.unmodifiableList(mimeTypes);
+    this.threadSafe = threadSafe;
+    this.cacheable = cacheable;
+  }
+
+  /**
+   * Read the details from the <code>ConverterPluginDetails</code> annotation. If the annotation is missing, the name
+   * will be obtained from the <code>toString()</code> method of the plugin.
+   *
+   * @param pluginClass is the class of the plugin.
+   * @param plugin is an instance of the plugin. Only needed if the annotation is missing.
+   * @return the details of the plugin.
+   */
+  public static PluginDescriptor fromClass(Class<? extends ConverterPlugin> pluginClass, ConverterPlugin plugin)
+  {
+    ConverterPluginDetails annot = pluginClass.getAnnotation(ConverterPluginDetails.class);
+    if (annot != null)
+    {
+      return new PluginDescriptor(pluginClass.getName(), annot.authorName(), annot.authorEmail(), annot.pluginName(), annot.pluginDescription(),
+          annot.pluginVersion(), annot.pluginWebsite(), Arrays.asList(annot.mimeTypes()),
+          annot.threadSafe(), annot.cacheable());
+    }
+    return new PluginDescriptor(pluginClass.getName(), "", "", plugin.toString(), "", "", "", Collections.<String> emptyList(), false, false);
+  }
+
+  public String getClassName()
+  {
+    return className;
+  }
+
+  public String getAuthorName()
+  {
+    return authorName;
+  }
+
+  public String getAuthorEmail()
+  {
+    return authorEmail;
+  }
+
+  public String getPluginName()
+  {
+    return pluginName;
+  }
+
+  public String getPluginDescription()
+  {
+    return pluginDescription;
+  }
+
+  public String getPluginVersion()
+  {
+    return pluginVersion;
+  }
+
+  public String getPluginWebsite()
+  {
+    return pluginWebsite;
+  }
+
+  /**
+   * @return the MIME types the plugin declared as importable, empty if the plugin declared none.
+   */
+  public List<String> getMimeTypes()
+  {
+    return mimeTypes;
+  }
+
+  /**
+   * @return true if the plugin declared that it can convert the files of a drop in parallel.
+   */
+  public boolean isThreadSafe()
+  {
+    return threadSafe;
+  }
+
+  /**
+   * @return true if the plugin declared that its outputs can be reused for the same content.
+   */
+  public boolean isCacheable()
+  {
+    return cacheable;
+  }
+}
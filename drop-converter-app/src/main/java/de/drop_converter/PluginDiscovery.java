@@ -0,0 +1,100 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter;
+
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.drop_converter.plugin.ConverterPlugin;
+
+/**
+ * Find the plugin classes through the <code>ServiceLoader</code>, but without instantiating them. The classes will
+ * not be initialized, so the plugin details can be read from the annotation without running any plugin code.
+ *
+ * @author Thomas Chojecki
+ */
+public final class PluginDiscovery
+{
+  private static final Logger LOG = Logger.getLogger(PluginDiscovery.class.getName());
+
+  /**
+   * The provider-configuration file of the plugins.
+   */
+  public static final String SERVICE_FILE = "META-INF/services/" + ConverterPlugin.class.getName();
+
+  private PluginDiscovery()
+  {}
+
+  /**
+   * Search all plugin classes that are registered inside the <code>ClassLoader</code>. The classes are taken from the
+   * <code>ServiceLoader</code> providers, which load them without creating an instance. For an
+   * <code>URLClassLoader</code> only its own classes will be used, not the ones of the parent.
+   *
+   * @param cl is the <code>ClassLoader</code> where the plugins should be searched.
+   * @return the plugin classes in the order they were found.
+   */
+  public static List<Class<? extends ConverterPlugin>> findPluginClasses(ClassLoader cl)
+  {
+    List<Class<? extends ConverterPlugin>> classes = new ArrayList<>();
+    Iterator<ServiceLoader.Provider<ConverterPlugin>> providers = ServiceLoader.load(ConverterPlugin.class, cl).stream().iterator();
+    String lastError = null;
+    while (true)
+    {
+      try
+      {
+        if (!providers.hasNext())
+        {
+          break;
+        }
+        Class<? extends ConverterPlugin> pluginClass = providers.next().type();
+        if (!(cl instanceof URLClassLoader) || pluginClass.getClassLoader() == cl)
+        {
+          classes.add(pluginClass);
+        }
+      }
+      catch (ServiceConfigurationError e)
+      {
+        // the search continues with the next provider, unless the registrations could not be located at all
+        if (String.valueOf(e.getMessage()).equals(lastError))
+        {
+          break;
+        }
+        lastError = String.valueOf(e.getMessage());
+        LOG.log(Level.WARNING, "Could not load a registered plugin.", e);
+      }
+    }
+    return classes;
+  }
+
+  /**
+   * Load a plugin class without initializing it.
+   *
+   * @param className is the name of the plugin class.
+   * @param cl is the <code>ClassLoader</code> that should load the class.
+   * @return the plugin class or null if the class could not be loaded or is not a plugin.
+   */
+  public static Class<? extends ConverterPlugin> loadPluginClass(String className, ClassLoader cl)
+  {
+    try
+    {
+      Class<?> clazz = Class.forName(className, false, cl);
+      if (ConverterPlugin.class.isAssignableFrom(clazz))
+      {
+        return clazz.asSubclass(ConverterPlugin.class);
+      }
+      LOG.warning("Registered plugin " + className + " does not implement " + ConverterPlugin.class.getName());
+    }
+    catch (ClassNotFoundException | LinkageError e)
+    {
+      LOG.log(Level.WARNING, "Could not load plugin class " + className, e);
+    }
+    return null;
+  }
+}
@@ -3,19 +3,40 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package de.drop_converter;
 
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.ServiceLoader;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import de.drop_converter.conversion.PipelinePlugin;
+import de.drop_converter.listener.DirectoryListener;
 import de.drop_converter.listener.PluginListener;
+import de.drop_converter.management.Management;
 import de.drop_converter.plugin.ConverterPlugin;
+import de.drop_converter.plugin.annotations.ConverterPluginDetails;
 import de.drop_converter.plugin.exception.InitializationException;
+import de.drop_converter.watch.DirectoryWatcher;
 
 /**
  * Handle the drop-converter-plugins. New plugins can be
@@ -27,26 +48,423 @@ public class PluginHandler
 
   private static final Logger LOG = Logger.getLogger(PluginHandler.class.getName());
 
-  private final Set<PluginWrapper> plugins = new TreeSet<>();
+  // the registered plugins, an immutable snapshot that is replaced on each change, so reads never take a lock
+  private final AtomicReference<SortedSet<PluginWrapper>> plugins = new AtomicReference<>(
+      Collections.unmodifiableSortedSet(new TreeSet<PluginWrapper>()));
 
-  private List<String> pluginExclusions = new ArrayList<>();
+  private volatile List<String> pluginExclusions = new ArrayList<>();
 
-  private final List<PluginListener> listenerList = new ArrayList<>();
+  // listeners are added on the EDT while plugins are loaded in the background
+  private final CopyOnWriteArrayList<PluginListener> listenerList = new CopyOnWriteArrayList<>();
 
-  private boolean closed = false;
+  // written under the handler lock, read without it to skip work after dispose
+  private volatile boolean closed = false;
+
+  // the index of the plugin directory, null until the plugin directory was loaded
+  private volatile PluginIndex pluginIndex;
+
+  // the loaded plugin jars by their absolute path
+  private final Map<File, PluginJar> pluginJars = new ConcurrentHashMap<>();
+
+  // a changed jar will be reloaded after it was not written for this time in milliseconds
+  private static final long PLUGIN_QUIET_PERIOD = 1000;
+
+  // the maximum time in milliseconds to wait for running conversions of a plugin that should be unloaded
+  private static final long PLUGIN_DRAIN_TIMEOUT = 30000;
+
+  private DirectoryWatcher pluginWatcher;
+
+  // initialize the plugins in parallel, so the startup only takes as long as the slowest plugin
+  private final ExecutorService initExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory()
+  {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r)
+    {
+      Thread thread = new Thread(r, "plugin-init-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  // destroys unloaded plugins after their conversions finished, so the handler lock is not held while waiting
+  private final ExecutorService retireExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+  {
+    @Override
+    public Thread newThread(Runnable r)
+    {
+      Thread thread = new Thread(r, "plugin-retire");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  /**
+   * How a registered plugin will be initialized.
+   */
+  private enum Initialization
+  {
+    /** initialize on the calling thread */
+    NOW,
+    /** initialize on the plugin initialization pool */
+    BACKGROUND,
+    /** initialize on first selection */
+    LAZY
+  }
 
   /**
-   * Load all plugins that can be find via the <code>ClassLoader</code>.
+   * Load all plugin jars from the directory. Plugins of jars that are part of the index will be registered without
+   * opening the jar, their classes will be loaded and initialized on first selection. All other jars will be indexed.
+   * Each jar get its own <code>ClassLoader</code>, that will be closed if all plugins of the jar are destroyed.
+   * 
+   * @param directory is the plugin directory.
+   * @param index is the plugin index. It will be updated and stored.
+   */
+  public void loadPlugins(File directory, PluginIndex index)
+  {
+    if (closed)
+    {
+      return;
+    }
+    pluginIndex = index;
+
+    FilenameFilter jarFileFilter = new FilenameFilter()
+    {
+
+      @Override
+      public boolean accept(File dir, String name)
+      {
+        return name.endsWith(".jar");
+      }
+    };
+
+    // Search for plugins in the plugin directory and load it.
+    // TODO: Read also directories with complex plugin structures.
+    // TODO: Read also zip files for complex plugins.
+    File[] jarFiles = directory.listFiles(jarFileFilter);
+    if (jarFiles == null)
+    {
+      return;
+    }
+
+    for (File pluginFile : jarFiles)
+    {
+      register(pluginFile, index, Collections.<PluginWrapper> emptyList());
+    }
+
+    index.retain(Arrays.asList(jarFiles));
+    storeIndex();
+  }
+
+  /**
+   * Load a single plugin jar, e.g. a new installed one. The plugins will be initialized in the background and the jar
+   * will be added to the plugin index, if the plugins were loaded from the plugin directory before. If an older version
+   * of the jar is loaded, its plugins will be replaced and destroyed in the background after their running conversions
+   * finished.
+   * 
+   * @param jar is the plugin jar.
+   * @return the registered plugins.
+   */
+  public synchronized List<PluginWrapper> loadPluginJar(File jar)
+  {
+    if (closed)
+    {
+      return Collections.<PluginWrapper> emptyList();
+    }
+
+    PluginJar loadedJar = pluginJars.get(jar.getAbsoluteFile());
+    if (loadedJar != null && !loadedJar.isModified())
+    {
+      LOG.fine("Plugin " + jar.getAbsolutePath() + " is already loaded.");
+      return getPlugins(loadedJar);
+    }
+
+    // the new plugins replace the old ones in a single change, so no reader sees both versions or none of them
+    List<PluginWrapper> replaced = loadedJar != null ? getPlugins(loadedJar) : Collections.<PluginWrapper> emptyList();
+    List<PluginWrapper> loaded = register(jar, pluginIndex, replaced);
+    if (loadedJar != null)
+    {
+      // the remaining references will be released by the wrappers
+      loadedJar.remove();
+    }
+    storeIndex();
+    retire(replaced);
+    return loaded;
+  }
+
+  /**
+   * Unload all plugins of a deleted plugin jar. Their running conversions will be finished before the plugins are
+   * destroyed in the background.
+   * 
+   * @param jar is the plugin jar.
+   */
+  public synchronized void unloadPluginJar(File jar)
+  {
+    if (closed)
+    {
+      return;
+    }
+
+    List<PluginWrapper> removed = unregister(jar);
+    if (pluginIndex != null)
+    {
+      pluginIndex.removePlugins(jar);
+      storeIndex();
+    }
+    retire(removed);
+  }
+
+  /**
+   * Watch the plugin directory and load, replace or unload plugin jars if they are added, changed or deleted.
+   * 
+   * @param directory is the plugin directory.
+   * @throws IOException if the directory could not be watched.
+   */
+  public synchronized void watchPluginDirectory(File directory) throws IOException
+  {
+    if (closed)
+    {
+      return;
+    }
+
+    if (pluginWatcher != null)
+    {
+      pluginWatcher.close();
+    }
+
+    pluginWatcher = new DirectoryWatcher(directory.toPath(), PLUGIN_QUIET_PERIOD, new DirectoryListener()
+    {
+      @Override
+      public void fileChanged(Path file)
+      {
+        if (file.getFileName().toString().endsWith(".jar"))
+        {
+          LOG.info("Plugin changed: " + file);
+          loadPluginJar(file.toFile());
+        }
+      }
+
+      @Override
+      public void fileDeleted(Path file)
+      {
+        if (file.getFileName().toString().endsWith(".jar"))
+        {
+          LOG.info("Plugin deleted: " + file);
+          unloadPluginJar(file.toFile());
+        }
+      }
+    });
+    pluginWatcher.start(false);
+  }
+
+  private List<PluginWrapper> getPlugins(PluginJar pluginJar)
+  {
+    List<PluginWrapper> result = new ArrayList<>();
+    for (PluginWrapper pluginWrapper : getPlugins())
+    {
+      if (pluginWrapper.getPluginJar() == pluginJar)
+      {
+        result.add(pluginWrapper);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Remove the plugins of the jar from the registry, so they will not be used for new conversions.
+   */
+  private List<PluginWrapper> unregister(File jar)
+  {
+    PluginJar pluginJar = pluginJars.remove(jar.getAbsoluteFile());
+    if (pluginJar == null)
+    {
+      return Collections.emptyList();
+    }
+
+    // remove all plugins of the jar at once, so no reader sees only a part of the jar
+    List<PluginWrapper> removed = getPlugins(pluginJar);
+    update(Collections.<PluginWrapper> emptyList(), removed);
+    unregistered(removed);
+    // the remaining references will be released by the wrappers
+    pluginJar.remove();
+    return removed;
+  }
+
+  /**
+   * Unregister the MBeans of removed plugins and notify the listeners.
+   */
+  private void unregistered(List<PluginWrapper> removed)
+  {
+    for (PluginWrapper pluginWrapper : removed)
+    {
+      Management.unregister(Management.pluginName(pluginWrapper));
+      for (PluginListener listener : listenerList)
+      {
+        listener.removedPlugin(pluginWrapper);
+      }
+    }
+  }
+
+  /**
+   * Destroy unregistered plugins on the retire thread after their running conversions finished.
+   */
+  private void retire(final List<PluginWrapper> removed)
+  {
+    if (removed.isEmpty())
+    {
+      return;
+    }
+    retireExecutor.execute(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        destroy(removed);
+      }
+    });
+  }
+
+  private void destroy(List<PluginWrapper> removed)
+  {
+    for (PluginWrapper pluginWrapper : removed)
+    {
+      try
+      {
+        if (!pluginWrapper.awaitConversions(PLUGIN_DRAIN_TIMEOUT))
+        {
+          LOG.warning("Conversions of plugin " + pluginWrapper.getPluginName() + " did not finish in time. Destroying it anyway.");
+        }
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+
+      try
+      {
+        pluginWrapper.disablePlugin();
+        pluginWrapper.destroyPlugin();
+        LOG.info("Plugin unloaded: " + pluginWrapper.getPluginName());
+      }
+      catch (InitializationException | RuntimeException e)
+      {
+        LOG.log(Level.WARNING, "Plugin could not be destroyed: " + pluginWrapper.getPluginName(), e);
+      }
+    }
+  }
+
+  /**
+   * Register the plugins of the jar.
+   * 
+   * @param replaced are the plugins of an older version of the jar, they are unregistered in the same change.
+   */
+  private List<PluginWrapper> register(File pluginFile, PluginIndex index, List<PluginWrapper> replaced)
+  {
+    PluginJar pluginJar = new PluginJar(pluginFile);
+    pluginJars.put(pluginFile.getAbsoluteFile(), pluginJar);
+    List<PluginWrapper> loaded = new ArrayList<>();
+
+    List<PluginDescriptor> descriptors = index != null ? index.getPlugins(pluginFile) : null;
+    if (descriptors != null)
+    {
+      for (PluginDescriptor descriptor : descriptors)
+      {
+        loaded.add(new PluginWrapper(descriptor, pluginJar));
+      }
+      register(loaded, replaced, Initialization.LAZY);
+      return loaded;
+    }
+
+    LOG.info("Indexing plugin " + pluginFile.getAbsolutePath());
+    ClassLoader cl;
+    try
+    {
+      cl = pluginJar.acquire();
+    }
+    catch (IOException e)
+    {
+      LOG.warning("Could not load Plugin: " + pluginFile.getAbsolutePath());
+      register(loaded, replaced, Initialization.BACKGROUND);
+      return loaded;
+    }
+
+    try
+    {
+      descriptors = new ArrayList<>();
+      for (Class<? extends ConverterPlugin> pluginClass : PluginDiscovery.findPluginClasses(cl))
+      {
+        try
+        {
+          PluginDescriptor descriptor = pluginClass.isAnnotationPresent(ConverterPluginDetails.class) ? PluginDescriptor.fromClass(pluginClass, null)
+              : PluginDescriptor.fromClass(pluginClass, PluginWrapper.instantiate(pluginClass));
+          descriptors.add(descriptor);
+        }
+        catch (InitializationException e)
+        {
+          LOG.log(Level.SEVERE, "Plugin could not be loaded: " + pluginClass.getName(), e);
+        }
+      }
+
+      // the wrappers will acquire the class loader again on their own
+      for (PluginDescriptor descriptor : descriptors)
+      {
+        loaded.add(new PluginWrapper(descriptor, pluginJar));
+      }
+      register(loaded, replaced, Initialization.BACKGROUND);
+    }
+    finally
+    {
+      pluginJar.release();
+    }
+
+    if (index != null)
+    {
+      index.putPlugins(pluginFile, descriptors);
+    }
+    return loaded;
+  }
+
+  private void storeIndex()
+  {
+    if (pluginIndex != null)
+    {
+      try
+      {
+        pluginIndex.store();
+      }
+      catch (IOException e)
+      {
+        LOG.log(Level.WARNING, "Could not store the plugin index.", e);
+      }
+    }
+  }
+
+  /**
+   * Load all plugins that can be find via the <code>ClassLoader</code>. The plugins will be registered immediately,
+   * but initialized in parallel in the background. Listeners will be notified through
+   * {@link PluginListener#initializedPlugin(PluginWrapper)} if a plugin is ready.
    * 
    * @param cl is the <code>ClassLoader</code> where the plugins should be searched.
-   * @param pluginExclusions is a list with plugins that need to be excluded.
+   * @return the registered plugins.
    */
-  public void loadPlugins(ClassLoader cl)
+  public List<PluginWrapper> loadPlugins(ClassLoader cl)
   {
-    for (ConverterPlugin converterPlugin : ServiceLoader.load(ConverterPlugin.class, cl))
+    List<PluginWrapper> loaded = new ArrayList<>();
+    for (Class<? extends ConverterPlugin> pluginClass : PluginDiscovery.findPluginClasses(cl))
     {
-      registerPlugin(converterPlugin);
+      try
+      {
+        PluginWrapper pluginWrapper = new PluginWrapper(pluginClass);
+        register(pluginWrapper, Initialization.BACKGROUND);
+        loaded.add(pluginWrapper);
+      }
+      catch (InitializationException e)
+      {
+        LOG.log(Level.SEVERE, "Plugin could not be loaded: " + pluginClass.getName(), e);
+      }
     }
+    return loaded;
   }
 
   /**
@@ -56,43 +474,174 @@ public class PluginHandler
    */
   public void registerPlugin(ConverterPlugin plugin)
   {
-    PluginWrapper pluginWrapper = new PluginWrapper(plugin);
-    pluginWrapper.setPluginListenerList(Collections.unmodifiableList(listenerList));
+    register(new PluginWrapper(plugin), Initialization.NOW);
+  }
+
+  /**
+   * Register a pipeline of plugins as a plugin. The stages are looked up when the pipeline is used, so they don't need
+   * to be loaded yet.
+   * 
+   * @param name is the name of the pipeline.
+   * @param stages are the names or class names of the streaming plugins the data flows through.
+   * @param bufferSize is the size of the pipes between the stages in bytes.
+   */
+  public void registerPipeline(String name, List<String> stages, int bufferSize)
+  {
+    PipelinePlugin pipeline = new PipelinePlugin(this, name, stages, bufferSize);
+    register(new PluginWrapper(pipeline.getDescriptor(), pipeline), Initialization.NOW);
+    LOG.fine("Registered pipeline " + name + " with stages " + stages);
+  }
+
+  /**
+   * Register the plugin and initialize it, if it is not excluded by the user.
+   * 
+   * @param pluginWrapper is the plugin that should be registered.
+   * @param initialization defines when the plugin will be initialized.
+   */
+  private void register(PluginWrapper pluginWrapper, Initialization initialization)
+  {
+    register(Collections.singletonList(pluginWrapper), Collections.<PluginWrapper> emptyList(), initialization);
+  }
+
+  /**
+   * Register the plugins and unregister the replaced ones with a single change of the registered plugins.
+   * 
+   * @param added are the plugins that should be registered.
+   * @param replaced are the plugins that should be unregistered.
+   * @param initialization defines when the added plugins will be initialized.
+   */
+  private void register(List<PluginWrapper> added, List<PluginWrapper> replaced, Initialization initialization)
+  {
+    for (PluginWrapper pluginWrapper : added)
+    {
+      pluginWrapper.setPluginExcluded(pluginExclusions.contains(pluginWrapper.getPluginClassName()));
+      pluginWrapper.setPluginListenerList(Collections.unmodifiableList(listenerList));
+    }
+
+    // a plugin registered after dispose would never be destroyed
+    synchronized (this)
+    {
+      if (closed)
+      {
+        LOG.fine("Plugin handler is shut down, skipping " + added.size() + " plugins");
+        return;
+      }
+      update(added, replaced);
+    }
+
+    // the replaced plugins may have the same MBean names as the new ones
+    unregistered(replaced);
+    for (PluginWrapper pluginWrapper : added)
+    {
+      registered(pluginWrapper, initialization);
+    }
+  }
+
+  /**
+   * Register the MBean of an added plugin, notify the listeners and initialize the plugin.
+   */
+  private void registered(final PluginWrapper pluginWrapper, Initialization initialization)
+  {
+    Management.register(pluginWrapper.getMetrics(), Management.pluginName(pluginWrapper));
 
-    if (pluginExclusions.contains(plugin.getClass().getName()))
+    // fire listener
+    for (PluginListener listener : listenerList)
+    {
+      listener.addedPlugin(pluginWrapper);
+    }
+
+    if (pluginWrapper.isPluginExcluded())
     {
       LOG.info("Plugin disabled by the user: " + pluginWrapper.getPluginName());
     }
-    else
+    else if (initialization == Initialization.BACKGROUND)
     {
       try
       {
-        // Initialize the plugin
-        pluginWrapper.initializePlugin();
+        initExecutor.execute(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            initialize(pluginWrapper);
+          }
+        });
       }
-      catch (InitializationException e)
+      catch (RejectedExecutionException e)
       {
-        LOG.log(Level.SEVERE, "Plugin initialization failed: " + pluginWrapper.getPluginName() + " could not be initialized.", e);
+        // the handler was shut down in the meantime and destroyed the plugin
+        LOG.fine("Plugin handler is shut down, skipping the initialization of " + pluginWrapper.getPluginName());
       }
     }
+    else if (initialization == Initialization.NOW)
+    {
+      initialize(pluginWrapper);
+    }
+  }
 
-    plugins.add(pluginWrapper);
+  /**
+   * Replace the snapshot of the registered plugins. Concurrent changes are retried, so none gets lost.
+   * 
+   * @param added are the plugins that should be registered.
+   * @param removed are the plugins that should be unregistered.
+   */
+  private void update(Collection<PluginWrapper> added, Collection<PluginWrapper> removed)
+  {
+    while (true)
+    {
+      SortedSet<PluginWrapper> current = plugins.get();
+      SortedSet<PluginWrapper> next = new TreeSet<>(current);
+      next.removeAll(removed);
+      next.addAll(added);
+      if (plugins.compareAndSet(current, Collections.unmodifiableSortedSet(next)))
+      {
+        return;
+      }
+    }
+  }
 
-    // fire listener
-    for (PluginListener listener : listenerList)
+  private void initialize(PluginWrapper pluginWrapper)
+  {
+    long start = System.currentTimeMillis();
+    try
     {
-      listener.addedPlugin(pluginWrapper);
+      // Initialize the plugin
+      pluginWrapper.initializePlugin();
+      LOG.fine("Plugin " + pluginWrapper.getPluginName() + " initialized in " + (System.currentTimeMillis() - start) + " ms");
+    }
+    catch (InitializationException | RuntimeException e)
+    {
+      LOG.log(Level.SEVERE, "Plugin initialization failed: " + pluginWrapper.getPluginName() + " could not be initialized.", e);
     }
   }
 
   /**
-   * Return all registered plugins.
+   * Return all registered plugins. The set is an immutable snapshot, so it can be iterated while plugins are registered
+   * in the background.
    * 
    * @return a Set of plugins wrapped inside the <code>ConverterPluginsWrapper</code>
    */
   public Set<PluginWrapper> getPlugins()
   {
-    return Collections.unmodifiableSet(plugins);
+    return plugins.get();
+  }
+
+  /**
+   * Search a plugin by its name or class name.
+   * 
+   * @param name is the name, compared case insensitive, or the class name of the plugin.
+   * @return the plugin or null if no plugin matches.
+   */
+  public PluginWrapper findPlugin(String name)
+  {
+    for (PluginWrapper pluginWrapper : plugins.get())
+    {
+      if (pluginWrapper.getPluginName().equalsIgnoreCase(name) || pluginWrapper.getPluginClassName().equals(name))
+      {
+        return pluginWrapper;
+      }
+    }
+    return null;
   }
 
   /**
@@ -102,21 +651,48 @@ public class PluginHandler
    */
   public void addPluginListener(PluginListener listener)
   {
-    if (!listenerList.contains(listener))
-    {
-      listenerList.add(listener);
-    }
+    listenerList.addIfAbsent(listener);
   }
 
   /**
-   * Dispose the PluginHandler and disable/destroy the plugins.
+   * Dispose the PluginHandler and disable/destroy the plugins. The plugins are unregistered at once and no plugin can be
+   * registered afterwards.
    */
   public synchronized void dispose()
   {
     if (!closed)
     {
       LOG.info("Shutting down the plugin handler and all registered plugins.");
-      Iterator<PluginWrapper> iterator = plugins.iterator();
+      // no plugin can be registered anymore, so none is missed below
+      closed = true;
+      if (pluginWatcher != null)
+      {
+        try
+        {
+          pluginWatcher.close();
+        }
+        catch (IOException e)
+        {
+          LOG.log(Level.WARNING, "Could not stop watching the plugin directory.", e);
+        }
+      }
+
+      // plugins that are still initialized need to finish, before they can be destroyed
+      initExecutor.shutdown();
+      retireExecutor.shutdown();
+      try
+      {
+        initExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        retireExecutor.awaitTermination(PLUGIN_DRAIN_TIMEOUT, TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+
+      // readers see either all plugins or none, never a destroyed one
+      Set<PluginWrapper> disposed = plugins.getAndSet(Collections.unmodifiableSortedSet(new TreeSet<PluginWrapper>()));
+      Iterator<PluginWrapper> iterator = disposed.iterator();
       while (iterator.hasNext())
       {
         PluginWrapper pluginWrapper = iterator.next();
@@ -128,17 +704,15 @@ public class PluginHandler
             pluginWrapper.disablePlugin();
           }
 
-          if (pluginWrapper.isPluginInitialized())
-          {
-            pluginWrapper.destroyPlugin();
-          }
+          // also unload plugins that were never initialized
+          pluginWrapper.destroyPlugin();
         }
         catch (InitializationException e)
         {
           // nothing to do
         }
+        Management.unregister(Management.pluginName(pluginWrapper));
       }
-      closed = true;
     }
     else
     {
@@ -0,0 +1,297 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persistent index of the plugin jars and the details of the plugins they contain. The index allows showing the
+ * plugins without opening and class loading the jars. An entry is identified by the path of the jar and is only valid
+ * as long as the size and modification time, or at least the content hash, did not change.
+ *
+ * @author Thomas Chojecki
+ */
+public class PluginIndex
+{
+  private static final Logger LOG = Logger.getLogger(PluginIndex.class.getName());
+
+  private final static String KEY_SIZE = ".size";
+  private final static String KEY_MODIFIED = ".modified";
+  private final static String KEY_HASH = ".hash";
+  private final static String KEY_PLUGINS = ".plugins";
+
+  private final static String KEY_AUTHOR_NAME = ".authorName";
+  private final static String KEY_AUTHOR_EMAIL = ".authorEmail";
+  private final static String KEY_PLUGIN_NAME = ".pluginName";
+  private final static String KEY_PLUGIN_DESCRIPTION = ".pluginDescription";
+  private final static String KEY_PLUGIN_VERSION = ".pluginVersion";
+  private final static String KEY_PLUGIN_WEBSITE = ".pluginWebsite";
+  private final static String KEY_MIME_TYPES = ".mimeTypes";
+  private final static String KEY_THREAD_SAFE = ".threadSafe";
+  private final static String KEY_CACHEABLE = ".cacheable";
+
+  private final File indexFile;
+
+  private final Properties props = new Properties();
+
+  private boolean modified = false;
+
+  /**
+   * Load the index. A missing or broken index file will result in an empty index.
+   *
+   * @param indexFile is the file where the index is stored.
+   */
+  public PluginIndex(File indexFile)
+  {
+    this.indexFile = indexFile;
+    if (indexFile.isFile())
+    {
+      try (FileInputStream fis = new FileInputStream(indexFile))
+      {
+        props.load(fis);
+      }
+      catch (IOException | IllegalArgumentException e)
+      {
+        LOG.log(Level.WARNING, "Could not read plugin index " + indexFile + ". The plugins will be indexed again.", e);
+        props.clear();
+      }
+    }
+  }
+
+  /**
+   * Return the indexed plugins of the jar.
+   *
+   * @param jar is the plugin jar.
+   * @return the plugin details or null if the jar is not indexed or the entry is stale.
+   */
+  public synchronized List<PluginDescriptor> getPlugins(File jar)
+  {
+    String key = jar.getAbsolutePath();
+    String classNames = props.getProperty(key + KEY_PLUGINS);
+    if (classNames == null)
+    {
+      return null;
+    }
+
+    String size = String.valueOf(jar.length());
+    String lastModified = String.valueOf(jar.lastModified());
+    if (!size.equals(props.getProperty(key + KEY_SIZE)) || !lastModified.equals(props.getProperty(key + KEY_MODIFIED)))
+    {
+      // the jar was touched, but it is only stale if the content changed
+      String hash = hash(jar);
+      if (hash == null || !hash.equals(props.getProperty(key + KEY_HASH)))
+      {
+        return null;
+      }
+      props.setProperty(key + KEY_SIZE, size);
+      props.setProperty(key + KEY_MODIFIED, lastModified);
+      modified = true;
+    }
+
+    List<PluginDescriptor> descriptors = new ArrayList<>();
+    for (String className : classNames.split(","))
+    {
+      if (className.isEmpty())
+      {
+        continue;
+      }
+      String prefix = key + '!' + className;
+      String mimeTypes = props.getProperty(prefix + KEY_MIME_TYPES);
+      String threadSafe = props.getProperty(prefix + KEY_THREAD_SAFE);
+      String cacheable = props.getProperty(prefix + KEY_CACHEABLE);
+      if (mimeTypes == null || threadSafe == null || cacheable == null)
+      {
+        // written by an older converter that did not know all details
+        return null;
+      }
+      descriptors.add(new PluginDescriptor(className, props.getProperty(prefix + KEY_AUTHOR_NAME, ""), props.getProperty(prefix + KEY_AUTHOR_EMAIL, ""),
+          props.getProperty(prefix + KEY_PLUGIN_NAME, className), props.getProperty(prefix + KEY_PLUGIN_DESCRIPTION, ""),
+          props.getProperty(prefix + KEY_PLUGIN_VERSION, ""), props.getProperty(prefix + KEY_PLUGIN_WEBSITE, ""), split(mimeTypes),
+          Boolean.parseBoolean(threadSafe), Boolean.parseBoolean(cacheable)));
+    }
+    return descriptors;
+  }
+
+  /**
+   * Add or replace the index entry of the jar.
+   *
+   * @param jar is the plugin jar.
+   * @param descriptors are the details of all plugins inside the jar.
+   */
+  public synchronized void putPlugins(File jar, List<PluginDescriptor> descriptors)
+  {
+    String hash = hash(jar);
+    if (hash == null)
+    {
+      return;
+    }
+
+    String key = jar.getAbsolutePath();
+    remove(key);
+
+    StringBuilder classNames = new StringBuilder();
+    for (PluginDescriptor descriptor : descriptors)
+    {
+      String prefix = key + '!' + descriptor.getClassName();
+      props.setProperty(prefix + KEY_AUTHOR_NAME, descriptor.getAuthorName());
+      props.setProperty(prefix + KEY_AUTHOR_EMAIL, descriptor.getAuthorEmail());
+      props.setProperty(prefix + KEY_PLUGIN_NAME, descriptor.getPluginName());
+      props.setProperty(prefix + KEY_PLUGIN_DESCRIPTION, descriptor.getPluginDescription());
+      props.setProperty(prefix + KEY_PLUGIN_VERSION, descriptor.getPluginVersion());
+      props.setProperty(prefix + KEY_PLUGIN_WEBSITE, descriptor.getPluginWebsite());
+      props.setProperty(prefix + KEY_MIME_TYPES, join(descriptor.getMimeTypes()));
+      props.setProperty(prefix + KEY_THREAD_SAFE, String.valueOf(descriptor.isThreadSafe()));
+      props.setProperty(prefix + KEY_CACHEABLE, String.valueOf(descriptor.isCacheable()));
+      classNames.append(descriptor.getClassName()).append(',');
+    }
+
+    props.setProperty(key + KEY_SIZE, String.valueOf(jar.length()));
+    props.setProperty(key + KEY_MODIFIED, String.valueOf(jar.lastModified()));
+    props.setProperty(key + KEY_HASH, hash);
+    props.setProperty(key + KEY_PLUGINS, classNames.toString());
+    modified = true;
+  }
+
+  /**
+   * Remove the index entry of the jar.
+   *
+   * @param jar is the plugin jar.
+   */
+  public synchronized void removePlugins(File jar)
+  {
+    remove(jar.getAbsolutePath());
+  }
+
+  /**
+   * Remove the entries of all jars that are not part of the given collection.
+   *
+   * @param jars are the jars that still exist.
+   */
+  public synchronized void retain(Collection<File> jars)
+  {
+    Set<String> keep = new HashSet<>();
+    for (File jar : jars)
+    {
+      keep.add(jar.getAbsolutePath());
+    }
+
+    for (String name : props.stringPropertyNames())
+    {
+      if (name.endsWith(KEY_PLUGINS))
+      {
+        String key = name.substring(0, name.length() - KEY_PLUGINS.length());
+        if (!keep.contains(key))
+        {
+          remove(key);
+        }
+      }
+    }
+  }
+
+  private void remove(String key)
+  {
+    for (String suffix : new String[] { KEY_SIZE, KEY_MODIFIED, KEY_HASH, KEY_PLUGINS })
+    {
+      if (props.remove(key + suffix) != null)
+      {
+        modified = true;
+      }
+    }
+    for (String name : props.stringPropertyNames())
+    {
+      if (name.startsWith(key + '!'))
+      {
+        props.remove(name);
+        modified = true;
+      }
+    }
+  }
+
+  /**
+   * Store the index if it was changed.
+   *
+   * @throws IOException if the index could not be written.
+   */
+  public synchronized void store() throws IOException
+  {
+    if (modified)
+    {
+      try (OutputStream out = new FileOutputStream(indexFile))
+      {
+        props.store(out, "Drop-Converter plugin index");
+      }
+      modified = false;
+    }
+  }
+
+  /**
+   * Join the MIME types with a line feed, because a MIME type may contain commas in its parameters.
+   */
+  private static String join(List<String> mimeTypes)
+  {
+    StringBuilder sb = new StringBuilder();
+    for (String mimeType : mimeTypes)
+    {
+      sb.append(mimeType).append('\n');
+    }
+    return sb.toString();
+  }
+
+  private static List<String> split(String mimeTypes)
+  {
+    List<String> list = new ArrayList<>();
+    for (String mimeType : mimeTypes.split("\n"))
+    {
+      if (!mimeType.isEmpty())
+      {
+        list.add(mimeType);
+      }
+    }
+    return list;
+  }
+
+  /**
+   * @return the SHA-1 hash of the file as hex string or null if the file could not be read.
+   */
+  private static String hash(File file)
+  {
+    try (InputStream in = new FileInputStream(file))
+    {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1)
+      {
+        digest.update(buffer, 0, read);
+      }
+
+      StringBuilder sb = new StringBuilder();
+      for (byte b : digest.digest())
+      {
+        sb.append(String.format("%02x", b));
+      }
+      return sb.toString();
+    }
+    catch (IOException | NoSuchAlgorithmException e)
+    {
+      LOG.log(Level.WARNING, "Could not hash plugin " + file, e);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A plugin jar with its own <code>ClassLoader</code>. All plugins of the jar share the <code>ClassLoader</code>, it
+ * will be created on first request and closed if the last plugin released it. After closing, the classes of the jar
+ * can be garbage collected and a new request will create a new <code>ClassLoader</code>.
+ *
+ * @author Thomas Chojecki
+ */
+public class PluginJar
+{
+  private static final Logger LOG = Logger.getLogger(PluginJar.class.getName());
+
+  private final File jar;
+
+  private URLClassLoader classLoader;
+
+  private int references = 0;
+
+  private boolean removed = false;
+
+  // the state of the jar at the time it was loaded
+  private final long length;
+  private final long lastModified;
+
+  public PluginJar(File jar)
+  {
+    this.jar = jar;
+    this.length = jar.length();
+    this.lastModified = jar.lastModified();
+  }
+
+  public File getJar()
+  {
+    return jar;
+  }
+
+  /**
+   * Return the <code>ClassLoader</code> of the jar and create it if needed. Each call need to be paired with a call of
+   * {@link #release()}.
+   *
+   * @return the <code>ClassLoader</code> of the jar.
+   * @throws IOException if the jar could not be converted to an URL or was removed.
+   */
+  public synchronized ClassLoader acquire() throws IOException
+  {
+    if (removed)
+    {
+      throw new FileNotFoundException("Plugin was removed: " + jar.getAbsolutePath());
+    }
+
+    if (classLoader == null)
+    {
+      classLoader = URLClassLoader.newInstance(new URL[] { jar.toURI().toURL() });
+      LOG.fine("Created class loader for plugin " + jar.getName());
+    }
+    references++;
+    return classLoader;
+  }
+
+  /**
+   * Release the <code>ClassLoader</code>. It will be closed if it is not used anymore.
+   */
+  public synchronized void release()
+  {
+    if (references == 0)
+    {
+      return;
+    }
+
+    if (--references == 0)
+    {
+      try
+      {
+        classLoader.close();
+        LOG.fine("Closed class loader for plugin " + jar.getName());
+      }
+      catch (IOException e)
+      {
+        LOG.log(Level.WARNING, "Could not close class loader for plugin " + jar.getName(), e);
+      }
+      classLoader = null;
+    }
+  }
+
+  /**
+   * Mark the jar as removed. The <code>ClassLoader</code> can still be released, but not acquired again.
+   */
+  public synchronized void remove()
+  {
+    removed = true;
+  }
+
+  /**
+   * @return true if the jar was replaced or deleted since it was loaded.
+   */
+  public boolean isModified()
+  {
+    return !jar.isFile() || jar.length() != length || jar.lastModified() != lastModified;
+  }
+
+  /**
+   * @return true if the <code>ClassLoader</code> of the jar is currently in use.
+   */
+  public synchronized boolean isLoaded()
+  {
+    return classLoader != null;
+  }
+
+  @Override
+  public String toString()
+  {
+    return jar.getAbsolutePath();
+  }
+}
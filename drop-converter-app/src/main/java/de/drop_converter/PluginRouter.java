@@ -0,0 +1,198 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter;
+
+import java.awt.datatransfer.DataFlavor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import de.drop_converter.listener.PluginListener;
+
+/**
+ * Index from the MIME types the plugins declared in their <code>ConverterPluginDetails</code> to the plugins. It finds
+ * a capable plugin for a drop with one lookup per offered <code>DataFlavor</code>, without asking the plugins through
+ * <code>canImport</code>. Plugins that declared no MIME types can not be routed and are only used if selected.
+ *
+ * @author Thomas Chojecki
+ */
+public class PluginRouter implements PluginListener
+{
+  private static final String SERIALIZED_OBJECT = "application/x-java-serialized-object";
+
+  private final Set<PluginWrapper> plugins = new TreeSet<>();
+
+  // rebuilt on every change, the lookups during a drag only read the current map
+  private volatile Map<String, List<PluginWrapper>> index = Collections.emptyMap();
+
+  /**
+   * Create the index for the plugins of the handler. Plugins that will be added or removed later are indexed through
+   * the <code>PluginListener</code>.
+   *
+   * @param handler is the handler of the plugins.
+   */
+  public PluginRouter(PluginHandler handler)
+  {
+    handler.addPluginListener(this);
+    for (PluginWrapper plugin : handler.getPlugins())
+    {
+      addedPlugin(plugin);
+    }
+  }
+
+  /**
+   * Find the plugin for the offered flavors. The first flavor that a plugin declared decides, because the flavors are
+   * offered in the order the drag source prefers them. Plugins that are disabled by the user will be skipped.
+   *
+   * @param flavors are the offered flavors of the drag.
+   * @param refused is the plugin that already refused the drop and will be skipped, may be null.
+   * @return the plugin that should handle the drop or null if no other plugin declared one of the flavors.
+   */
+  public PluginWrapper route(DataFlavor[] flavors, PluginWrapper refused)
+  {
+    Map<String, List<PluginWrapper>> index = this.index;
+    for (DataFlavor flavor : flavors)
+    {
+      String key = key(flavor);
+      PluginWrapper plugin = match(index.get(key), refused);
+      if (plugin == null)
+      {
+        plugin = match(index.get(wildcard(key)), refused);
+      }
+      if (plugin != null)
+      {
+        return plugin;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the first candidate that is not disabled by the user and did not refuse the drop.
+   */
+  private static PluginWrapper match(List<PluginWrapper> candidates, PluginWrapper refused)
+  {
+    if (candidates == null)
+    {
+      return null;
+    }
+    for (PluginWrapper candidate : candidates)
+    {
+      if (candidate != refused && !candidate.isPluginExcluded())
+      {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void addedPlugin(PluginWrapper plugin)
+  {
+    if (!plugin.getMimeTypes().isEmpty())
+    {
+      synchronized (plugins)
+      {
+        if (plugins.add(plugin))
+        {
+          rebuild();
+        }
+      }
+    }
+  }
+
+  @Override
+  public void removedPlugin(PluginWrapper plugin)
+  {
+    synchronized (plugins)
+    {
+      if (plugins.remove(plugin))
+      {
+        rebuild();
+      }
+    }
+  }
+
+  @Override
+  public void initializedPlugin(PluginWrapper plugin)
+  {}
+
+  @Override
+  public void destroyedPlugin(PluginWrapper plugin)
+  {}
+
+  /**
+   * Create a new index from the plugins. Needs to be called while holding the lock of the plugins.
+   */
+  private void rebuild()
+  {
+    Map<String, List<PluginWrapper>> newIndex = new HashMap<>();
+    for (PluginWrapper plugin : plugins)
+    {
+      for (String mimeType : plugin.getMimeTypes())
+      {
+        String key = key(mimeType);
+        List<PluginWrapper> candidates = newIndex.get(key);
+        if (candidates == null)
+        {
+          candidates = new ArrayList<>();
+          newIndex.put(key, candidates);
+        }
+        if (!candidates.contains(plugin))
+        {
+          candidates.add(plugin);
+        }
+      }
+    }
+    index = newIndex;
+  }
+
+  /**
+   * Normalize a declared MIME type to its base type. Only the class parameter of serialized java objects is kept,
+   * because it is the only parameter that tells what the data is.
+   *
+   * @param mimeType is the declared MIME type, e.g. <code>text/plain; charset=UTF-8</code>.
+   * @return the lookup key, e.g. <code>text/plain</code>.
+   */
+  static String key(String mimeType)
+  {
+    String[] parts = mimeType.split(";");
+    String baseType = parts[0].trim().toLowerCase(Locale.ROOT);
+    if (SERIALIZED_OBJECT.equals(baseType))
+    {
+      for (int i = 1; i < parts.length; i++)
+      {
+        String parameter = parts[i].trim();
+        if (parameter.startsWith("class="))
+        {
+          return baseType + "; class=" + parameter.substring("class=".length()).trim();
+        }
+      }
+    }
+    return baseType;
+  }
+
+  /**
+   * @return the lookup key of the flavor in the same form as {@link #key(String)}.
+   */
+  static String key(DataFlavor flavor)
+  {
+    String baseType = (flavor.getPrimaryType() + '/' + flavor.getSubType()).toLowerCase(Locale.ROOT);
+    if (SERIALIZED_OBJECT.equals(baseType))
+    {
+      return baseType + "; class=" + flavor.getRepresentationClass().getName();
+    }
+    return baseType;
+  }
+
+  private static String wildcard(String key)
+  {
+    return key.substring(0, key.indexOf('/') + 1) + '*';
+  }
+}
@@ -0,0 +1,204 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import de.drop_converter.plugin.exception.InitializationException;
+
+/**
+ * Keeps deselected plugins enabled, so switching back to a recently used plugin does not pay for
+ * <code>enablePlugin()</code> again. The least recently used plugin is disabled if the pool is full. If the live heap
+ * exceeds the heap budget after a garbage collection, the warm plugins will be disabled to free their resources.
+ * <p>
+ * The pool is only used on the lifecycle thread of the plugin chooser that fills it, so disabling a plugin does not
+ * block the EDT.
+ * </p>
+ *
+ * @author Thomas Chojecki
+ */
+public class PluginWarmPool
+{
+  private static final Logger LOG = Logger.getLogger(PluginWarmPool.class.getName());
+
+  private final int capacity;
+
+  // the warm plugins, the least recently used first
+  private final Set<PluginWrapper> plugins = new LinkedHashSet<>();
+
+  // the executor of the thread that uses the pool
+  private final Executor lifecycleExecutor;
+
+  private Runnable evictionListener;
+
+  /**
+   * @param capacity is the number of deselected plugins that stay enabled.
+   * @param heapBudget is the share of the maximum heap in percent the live data may use before the warm plugins are
+   *          disabled.
+   * @param lifecycleExecutor is the single thread executor the pool is used on.
+   */
+  public PluginWarmPool(int capacity, int heapBudget, Executor lifecycleExecutor)
+  {
+    if (capacity < 1 || heapBudget < 1 || heapBudget > 100)
+    {
+      throw new IllegalArgumentException("Capacity shall be positive and the heap budget between 1 and 100");
+    }
+    this.capacity = capacity;
+    this.lifecycleExecutor = lifecycleExecutor;
+    watchHeap(heapBudget);
+  }
+
+  /**
+   * A pipeline disables its stages, so disabling a warm pipeline may disable a plugin that is still used. The listener
+   * will be called after plugins were disabled by the pool, so it can enable the used plugins again.
+   *
+   * @param evictionListener will be called on the lifecycle thread after plugins were disabled, may be null.
+   */
+  public void setEvictionListener(Runnable evictionListener)
+  {
+    this.evictionListener = evictionListener;
+  }
+
+  /**
+   * Keep the deselected plugin enabled. The least recently used plugin will be disabled if the pool is full.
+   *
+   * @param plugin is an enabled plugin that is not used anymore.
+   */
+  public void release(PluginWrapper plugin)
+  {
+    plugins.remove(plugin);
+    plugins.add(plugin);
+    boolean full = plugins.size() > capacity;
+    while (plugins.size() > capacity)
+    {
+      Iterator<PluginWrapper> it = plugins.iterator();
+      PluginWrapper eldest = it.next();
+      it.remove();
+      disable(eldest, "pool is full");
+    }
+    if (full)
+    {
+      evicted();
+    }
+  }
+
+  /**
+   * Take the plugin out of the pool, because it is used again or was removed.
+   *
+   * @param plugin is the plugin that should not be disabled by the pool anymore.
+   * @return true if the plugin was warm.
+   */
+  public boolean take(PluginWrapper plugin)
+  {
+    return plugins.remove(plugin);
+  }
+
+  /**
+   * Disable all warm plugins.
+   */
+  public void clear()
+  {
+    for (Iterator<PluginWrapper> it = plugins.iterator(); it.hasNext();)
+    {
+      PluginWrapper plugin = it.next();
+      it.remove();
+      disable(plugin, "heap budget exceeded");
+    }
+    evicted();
+  }
+
+  private void evicted()
+  {
+    if (evictionListener != null)
+    {
+      evictionListener.run();
+    }
+  }
+
+  private static void disable(PluginWrapper plugin, String reason)
+  {
+    if (!plugin.isPluginEnabled())
+    {
+      return;
+    }
+    try
+    {
+      plugin.disablePlugin();
+      LOG.fine("Disabled warm plugin " + plugin.getPluginName() + ", " + reason);
+    }
+    catch (InitializationException ex)
+    {
+      LOG.log(Level.SEVERE, "Could not disable warm plugin " + plugin.getPluginName(), ex);
+    }
+  }
+
+  /**
+   * Let the JVM notify the pool if the live data of a heap pool exceeds the budget after a garbage collection. The
+   * usage after a collection does not count garbage, so it is a better signal than the current heap usage.
+   */
+  private void watchHeap(int heapBudget)
+  {
+    boolean watched = false;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+    {
+      MemoryUsage usage = pool.getUsage();
+      if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && usage.getMax() > 0)
+      {
+        pool.setCollectionUsageThreshold(usage.getMax() / 100 * heapBudget);
+        watched = true;
+      }
+    }
+    if (!watched)
+    {
+      LOG.config("The heap can not be watched, warm plugins are only limited by their number.");
+      return;
+    }
+
+    ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(new NotificationListener()
+    {
+      @Override
+      public void handleNotification(Notification notification, Object handback)
+      {
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType()))
+        {
+          try
+          {
+            lifecycleExecutor.execute(new Runnable()
+            {
+              @Override
+              public void run()
+              {
+                if (!plugins.isEmpty())
+                {
+                  LOG.info("Heap budget exceeded, disabling " + plugins.size() + " warm plugins.");
+                  clear();
+                }
+              }
+            });
+          }
+          catch (RejectedExecutionException e)
+          {
+            // the plugins are disposed with the handler
+            LOG.fine("The lifecycle executor is shut down, the warm plugins are not cleared.");
+          }
+        }
+      }
+    }, null, null);
+  }
+}
@@ -3,10 +3,17 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package de.drop_converter;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
+import javax.swing.TransferHandler.TransferSupport;
+
+import de.drop_converter.jfr.PluginLifecycleEvent;
 import de.drop_converter.listener.PluginListener;
+import de.drop_converter.management.PluginMetrics;
 import de.drop_converter.plugin.ConverterPlugin;
 import de.drop_converter.plugin.annotations.ConverterPluginDetails;
 import de.drop_converter.plugin.exception.InitializationException;
@@ -22,41 +29,124 @@ public class PluginWrapper implements Comparable<PluginWrapper>
 
   private static final Logger LOGGER = Logger.getLogger(PluginWrapper.class.getName());
 
-  private String authorName = "";
-  private String authorEmail = "";
-  private String pluginName = "";
-  private String pluginDescription = "";
-  private String pluginVersion = "";
-  private String pluginWebsite = "";
+  private final String authorName;
+  private final String authorEmail;
+  private final String pluginName;
+  private final String pluginDescription;
+  private final String pluginVersion;
+  private final String pluginWebsite;
+  private final List<String> mimeTypes;
+  private final boolean threadSafe;
+  private final boolean cacheable;
+
+  private volatile boolean pluginInitialized = false;
+  private volatile boolean pluginEnabled = false;
+  private volatile boolean pluginExcluded = false;
+
+  private final String pluginClassName;
+
+  // the class loader of the plugin, if the class should be loaded on first usage
+  private final ClassLoader classLoader;
+
+  // the jar of the plugin, if the wrapper owns the class loader of the plugin
+  private final PluginJar pluginJar;
+
+  // true while this wrapper holds a reference to the class loader of the plugin jar
+  private boolean pluginJarAcquired = false;
+
+  private volatile Class<? extends ConverterPlugin> pluginClass;
 
-  private boolean pluginInitialized = false;
-  private boolean pluginEnabled = false;
+  // will be created on first usage if the wrapper was created for a plugin class
+  private volatile ConverterPlugin plugin;
 
-  private final ConverterPlugin plugin;
+  // the number of conversions that currently use the plugin, guarded by itself
+  private final AtomicInteger activeConversions = new AtomicInteger();
+
+  // lets a plugin that is not thread-safe convert one item after another
+  private final ReentrantLock conversionLock = new ReentrantLock();
+
+  private final PluginMetrics metrics;
 
   // Hold a list with all registered listener that what to be notificated if plugin is initialized or disabled.
   private List<PluginListener> list;
 
   public PluginWrapper(ConverterPlugin plugin)
   {
-    this.plugin = plugin;
+    this(PluginDescriptor.fromClass(plugin.getClass(), plugin), null, null, plugin.getClass(), plugin);
+  }
 
-    Class<? extends ConverterPlugin> pluginClass = plugin.getClass();
+  /**
+   * Create a wrapper for a plugin class. The plugin details will be read from the annotation and the plugin will only
+   * be instantiated on first usage. Plugins without annotation will be instantiated immediately to obtain their name.
+   * 
+   * @param pluginClass is the class of the plugin.
+   * @throws InitializationException if a plugin without annotation could not be instantiated.
+   */
+  public PluginWrapper(Class<? extends ConverterPlugin> pluginClass) throws InitializationException
+  {
+    this(pluginClass, pluginClass.isAnnotationPresent(ConverterPluginDetails.class) ? null : instantiate(pluginClass));
+  }
 
-    if (pluginClass.isAnnotationPresent(ConverterPluginDetails.class))
-    {
-      ConverterPluginDetails annot = pluginClass.getAnnotation(ConverterPluginDetails.class);
-      authorName = annot.authorName();
-      authorEmail = annot.authorEmail();
-      pluginName = annot.pluginName();
-      pluginDescription = annot.pluginDescription();
-      pluginVersion = annot.pluginVersion();
-      pluginWebsite = annot.pluginWebsite();
-    }
-    else
-    {
-      pluginName = plugin.toString();
-    }
+  private PluginWrapper(Class<? extends ConverterPlugin> pluginClass, ConverterPlugin plugin)
+  {
+    this(PluginDescriptor.fromClass(pluginClass, plugin), null, null, pluginClass, plugin);
+  }
+
+  /**
+   * Create a wrapper from known plugin details. The plugin class will only be loaded on first usage.
+   * 
+   * @param descriptor are the details of the plugin, e.g. from the plugin index.
+   * @param classLoader is the <code>ClassLoader</code> that can load the plugin class.
+   */
+  public PluginWrapper(PluginDescriptor descriptor, ClassLoader classLoader)
+  {
+    this(descriptor, classLoader, null, null, null);
+  }
+
+  /**
+   * Create a wrapper for a plugin inside a plugin jar. The wrapper will use the <code>ClassLoader</code> of the jar on
+   * first usage and release it if the plugin is destroyed. So the classes of a destroyed plugin can be garbage
+   * collected.
+   * 
+   * @param descriptor are the details of the plugin, e.g. from the plugin index.
+   * @param pluginJar is the jar that contains the plugin.
+   */
+  public PluginWrapper(PluginDescriptor descriptor, PluginJar pluginJar)
+  {
+    this(descriptor, null, pluginJar, null, null);
+  }
+
+  /**
+   * Create a wrapper for a plugin instance with known plugin details, e.g. for a plugin that is composed of other
+   * plugins.
+   * 
+   * @param descriptor are the details of the plugin.
+   * @param plugin is the plugin.
+   */
+  public PluginWrapper(PluginDescriptor descriptor, ConverterPlugin plugin)
+  {
+    this(descriptor, null, null, plugin.getClass(), plugin);
+  }
+
+  private PluginWrapper(PluginDescriptor descriptor, ClassLoader classLoader, PluginJar pluginJar, Class<? extends ConverterPlugin> pluginClass,
+      ConverterPlugin plugin)
+  {
+    this.pluginClassName = descriptor.getClassName();
+    this.classLoader = classLoader;
+    this.pluginJar = pluginJar;
+    this.pluginClass = pluginClass;
+    this.plugin = plugin;
+
+    authorName = descriptor.getAuthorName();
+    authorEmail = descriptor.getAuthorEmail();
+    pluginName = descriptor.getPluginName();
+    pluginDescription = descriptor.getPluginDescription();
+    pluginVersion = descriptor.getPluginVersion();
+    pluginWebsite = descriptor.getPluginWebsite();
+    mimeTypes = descriptor.getMimeTypes();
+    threadSafe = descriptor.isThreadSafe();
+    cacheable = descriptor.isCacheable();
+    metrics = new PluginMetrics(pluginName);
   }
 
   public String getAuthorName()
@@ -89,9 +179,138 @@ public class PluginWrapper implements Comparable<PluginWrapper>
     return pluginWebsite;
   }
 
-  public ConverterPlugin getPlugin()
+  /**
+   * @return the MIME types the plugin declared as importable, empty if the plugin declared none.
+   */
+  public List<String> getMimeTypes()
+  {
+    return mimeTypes;
+  }
+
+  /**
+   * @return true if the plugin declared that it can convert the files of a drop in parallel.
+   */
+  public boolean isThreadSafe()
+  {
+    return threadSafe;
+  }
+
+  /**
+   * @return true if the plugin declared that its outputs can be reused for the same content.
+   */
+  public boolean isCacheable()
+  {
+    return cacheable;
+  }
+
+  /**
+   * @return the fully qualified class name of the plugin. The plugin will not be instantiated.
+   */
+  public String getPluginClassName()
+  {
+    return pluginClassName;
+  }
+
+  /**
+   * Return the plugin. It will be instantiated on the first call.
+   * 
+   * @return the plugin instance.
+   * @throws IllegalStateException if the plugin could not be instantiated.
+   */
+  public ConverterPlugin getPlugin() throws IllegalStateException
+  {
+    try
+    {
+      return loadPlugin();
+    }
+    catch (InitializationException e)
+    {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
+
+  private ConverterPlugin loadPlugin() throws InitializationException
+  {
+    ConverterPlugin result = plugin;
+    if (result == null)
+    {
+      synchronized (this)
+      {
+        result = plugin;
+        if (result == null)
+        {
+          result = instantiate(loadPluginClass());
+          plugin = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  private synchronized Class<? extends ConverterPlugin> loadPluginClass() throws InitializationException
+  {
+    if (pluginClass == null)
+    {
+      ClassLoader cl = classLoader;
+      if (pluginJar != null)
+      {
+        try
+        {
+          cl = pluginJar.acquire();
+          pluginJarAcquired = true;
+        }
+        catch (IOException e)
+        {
+          throw new InitializationException("Could not open plugin jar " + pluginJar, e);
+        }
+      }
+
+      pluginClass = PluginDiscovery.loadPluginClass(pluginClassName, cl);
+      if (pluginClass == null)
+      {
+        unloadPlugin();
+        throw new InitializationException("Could not load plugin class " + pluginClassName);
+      }
+    }
+    return pluginClass;
+  }
+
+  /**
+   * Drop the plugin instance and release the <code>ClassLoader</code> of the plugin jar. Only possible if the wrapper
+   * owns the <code>ClassLoader</code>, the plugin will be loaded again on next usage.
+   */
+  private synchronized void unloadPlugin()
+  {
+    if (pluginJar != null)
+    {
+      plugin = null;
+      pluginClass = null;
+      if (pluginJarAcquired)
+      {
+        pluginJarAcquired = false;
+        pluginJar.release();
+      }
+    }
+  }
+
+  /**
+   * @return the jar of the plugin or null if the plugin was not loaded from a plugin jar.
+   */
+  public PluginJar getPluginJar()
   {
-    return plugin;
+    return pluginJar;
+  }
+
+  static ConverterPlugin instantiate(Class<? extends ConverterPlugin> pluginClass) throws InitializationException
+  {
+    try
+    {
+      return pluginClass.getDeclaredConstructor().newInstance();
+    }
+    catch (ReflectiveOperationException | RuntimeException | LinkageError e)
+    {
+      throw new InitializationException("Could not instantiate plugin " + pluginClass.getName(), e);
+    }
   }
 
   /**
@@ -103,13 +322,21 @@ public class PluginWrapper implements Comparable<PluginWrapper>
   {
     if (!isPluginInitialized())
     {
-      // if the plugin was already destroyed, we can not initialize.
-      if (plugin == null)
+      PluginLifecycleEvent event = new PluginLifecycleEvent();
+      event.begin();
+      boolean success = false;
+      try
       {
-        return;
+        ConverterPlugin converterPlugin = loadPlugin();
+        long start = System.nanoTime();
+        converterPlugin.initPlugin();
+        metrics.recordInitPlugin(System.nanoTime() - start);
+        success = true;
+      }
+      finally
+      {
+        commit(event, PluginLifecycleEvent.INITIALIZE, success);
       }
-
-      plugin.initPlugin();
       LOGGER.fine("Plugin initialized: " + getPluginName());
       pluginInitialized = true;
 
@@ -123,32 +350,63 @@ public class PluginWrapper implements Comparable<PluginWrapper>
     }
   }
 
+  private void commit(PluginLifecycleEvent event, String transition, boolean success)
+  {
+    // only fill the event if a recording wants it
+    if (event.shouldCommit())
+    {
+      event.setPlugin(this);
+      event.transition = transition;
+      event.success = success;
+      event.commit();
+    }
+  }
+
   /**
-   * Call the destroyPlugin method within the Plugin. This will help terminating the plugin.
+   * Call the destroyPlugin method within the Plugin. This will help terminating the plugin. A plugin from a plugin jar
+   * will be unloaded afterwards.
    * 
    * @throws InitializationException if an error occur through destruction
    */
   public synchronized void destroyPlugin() throws InitializationException
   {
-    if (isPluginInitialized())
+    try
     {
-      plugin.destroyPlugin();
-      LOGGER.fine("Plugin destroyed: " + getPluginName());
-      pluginInitialized = false;
-
-      if (list != null)
+      if (isPluginInitialized())
       {
-        for (PluginListener listener : list)
+        PluginLifecycleEvent event = new PluginLifecycleEvent();
+        event.begin();
+        boolean success = false;
+        try
         {
-          listener.destroyedPlugin(this);
+          loadPlugin().destroyPlugin();
+          success = true;
+        }
+        finally
+        {
+          commit(event, PluginLifecycleEvent.DESTROY, success);
+        }
+        LOGGER.fine("Plugin destroyed: " + getPluginName());
+        pluginInitialized = false;
+
+        if (list != null)
+        {
+          for (PluginListener listener : list)
+          {
+            listener.destroyedPlugin(this);
+          }
         }
       }
     }
+    finally
+    {
+      unloadPlugin();
+    }
   }
 
   /**
    * Call the enablePlugin method within the Plugin. This will prepare the plugin for converting jobs. Will be triggered
-   * for the selected plugin.
+   * for the selected plugin. A plugin that is not initialized yet, will be initialized first.
    * 
    * @throws InitializationException if an error occur through enabling.
    */
@@ -156,7 +414,22 @@ public class PluginWrapper implements Comparable<PluginWrapper>
   {
     if (!pluginEnabled)
     {
-      plugin.enablePlugin();
+      initializePlugin();
+      PluginLifecycleEvent event = new PluginLifecycleEvent();
+      event.begin();
+      boolean success = false;
+      try
+      {
+        ConverterPlugin converterPlugin = loadPlugin();
+        long start = System.nanoTime();
+        converterPlugin.enablePlugin();
+        metrics.recordEnablePlugin(System.nanoTime() - start);
+        success = true;
+      }
+      finally
+      {
+        commit(event, PluginLifecycleEvent.ENABLE, success);
+      }
       LOGGER.fine("Plugin enabled: " + getPluginName());
       pluginEnabled = true;
     }
@@ -171,7 +444,21 @@ public class PluginWrapper implements Comparable<PluginWrapper>
   {
     if (pluginEnabled)
     {
-      plugin.disablePlugin();
+      PluginLifecycleEvent event = new PluginLifecycleEvent();
+      event.begin();
+      boolean success = false;
+      try
+      {
+        ConverterPlugin converterPlugin = loadPlugin();
+        long start = System.nanoTime();
+        converterPlugin.disablePlugin();
+        metrics.recordDisablePlugin(System.nanoTime() - start);
+        success = true;
+      }
+      finally
+      {
+        commit(event, PluginLifecycleEvent.DISABLE, success);
+      }
       LOGGER.fine("Plugin disabled: " + getPluginName());
       pluginEnabled = false;
     }
@@ -197,6 +484,133 @@ public class PluginWrapper implements Comparable<PluginWrapper>
     return pluginEnabled;
   }
 
+  /**
+   * Check if the user disabled the plugin. Such a plugin will not be initialized or shown in the plugin chooser.
+   * 
+   * @return true if the plugin was disabled by the user.
+   */
+  public boolean isPluginExcluded()
+  {
+    return pluginExcluded;
+  }
+
+  /**
+   * Mark the plugin as disabled by the user.
+   * 
+   * @param pluginExcluded true if the plugin should not be used.
+   */
+  public void setPluginExcluded(boolean pluginExcluded)
+  {
+    this.pluginExcluded = pluginExcluded;
+  }
+
+  /**
+   * Ask the plugin if it can import the data and record the call in the metrics of the plugin.
+   * 
+   * @param support is the data of the drop.
+   * @return true if the plugin can import the data.
+   * @throws IllegalStateException if the plugin could not be instantiated.
+   */
+  public boolean canImport(TransferSupport support)
+  {
+    ConverterPlugin converterPlugin = getPlugin();
+    long start = System.nanoTime();
+    try
+    {
+      return converterPlugin.canImport(support);
+    }
+    finally
+    {
+      metrics.recordCanImport(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * @return the metrics of the plugin.
+   */
+  public PluginMetrics getMetrics()
+  {
+    return metrics;
+  }
+
+  /**
+   * Mark the start of a conversion. Each call need to be paired with a call of {@link #conversionFinished()}.
+   */
+  public void conversionStarted()
+  {
+    activeConversions.incrementAndGet();
+  }
+
+  /**
+   * Mark the end of a conversion.
+   */
+  public void conversionFinished()
+  {
+    if (activeConversions.decrementAndGet() == 0)
+    {
+      synchronized (activeConversions)
+      {
+        activeConversions.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Wait until the plugin is free to convert on the calling thread. A plugin that is not thread-safe converts one item
+   * after another, a thread-safe plugin never waits. Each call need to be paired with a call of
+   * {@link #unlockConversion()} on the same thread.
+   * 
+   * @throws InterruptedException if the thread was interrupted while waiting.
+   */
+  public void lockConversion() throws InterruptedException
+  {
+    if (!threadSafe)
+    {
+      conversionLock.lockInterruptibly();
+    }
+  }
+
+  /**
+   * Let the next conversion of a plugin that is not thread-safe start.
+   */
+  public void unlockConversion()
+  {
+    if (!threadSafe)
+    {
+      conversionLock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of conversions that currently use the plugin.
+   */
+  public int getActiveConversions()
+  {
+    return activeConversions.get();
+  }
+
+  /**
+   * Wait until all running conversions of the plugin are finished.
+   * 
+   * @param timeout is the maximum time to wait in milliseconds.
+   * @return true if no conversion is running anymore.
+   * @throws InterruptedException if the thread was interrupted while waiting.
+   */
+  public boolean awaitConversions(long timeout) throws InterruptedException
+  {
+    long deadline = System.currentTimeMillis() + timeout;
+    synchronized (activeConversions)
+    {
+      long remaining = timeout;
+      while (activeConversions.get() > 0 && remaining > 0)
+      {
+        activeConversions.wait(remaining);
+        remaining = deadline - System.currentTimeMillis();
+      }
+      return activeConversions.get() == 0;
+    }
+  }
+
   @Override
   public int compareTo(PluginWrapper o)
   {
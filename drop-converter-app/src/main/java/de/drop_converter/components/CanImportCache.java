@@ -0,0 +1,116 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.components;
+
+import java.awt.datatransfer.DataFlavor;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.TransferHandler.TransferSupport;
+
+import de.drop_converter.PluginWrapper;
+
+/**
+ * Cache the <code>canImport</code> decisions of the plugins for a single drag session. The plugins will be asked
+ * several times in a second while the user drag content over the drop area, but the answer only depends on the
+ * offered <code>DataFlavor</code>s. The cache need to be cleared if the drag session ends.
+ *
+ * @author Thomas Chojecki
+ */
+class CanImportCache
+{
+  private final Map<Key, Boolean> decisions = new HashMap<>();
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Return the cached decision or ask the plugin if there is no decision for the offered flavors yet.
+   *
+   * @param plugin is the plugin that should handle the drop.
+   * @param support is the <code>TransferSupport</code> of the current drag.
+   * @return true if the plugin can import the data.
+   */
+  public boolean canImport(PluginWrapper plugin, TransferSupport support)
+  {
+    Key key = new Key(plugin, support.getDataFlavors());
+    Boolean decision = decisions.get(key);
+    if (decision == null)
+    {
+      misses.incrementAndGet();
+      decision = plugin.canImport(support);
+      decisions.put(key, decision);
+    }
+    else
+    {
+      hits.incrementAndGet();
+    }
+    return decision;
+  }
+
+  /**
+   * Forget all decisions. Should be called if a drag session ends.
+   */
+  public void clear()
+  {
+    decisions.clear();
+  }
+
+  /**
+   * @return the number of plugin calls that were avoided by the cache.
+   */
+  public long getHits()
+  {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of plugin calls that were needed.
+   */
+  public long getMisses()
+  {
+    return misses.get();
+  }
+
+  /**
+   * Cache key that combines the plugin and the offered flavors. The order of the flavors is not relevant.
+   */
+  private static final class Key
+  {
+    private final PluginWrapper plugin;
+
+    private final Set<DataFlavor> flavors;
+
+    private final int hash;
+
+    Key(PluginWrapper plugin, DataFlavor[] flavors)
+    {
+      this.plugin = plugin;
+      this.flavors = new HashSet<>(Arrays.asList(flavors));
+      this.hash = 31 * plugin.hashCode() + this.flavors.hashCode();
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+      if (!(obj instanceof Key))
+      {
+        return false;
+      }
+      Key other = (Key) obj;
+      return plugin == other.plugin && flavors.equals(other.flavors);
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.components;
+
+import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.Timer;
+
+import de.drop_converter.conversion.ConversionJob;
+import de.drop_converter.conversion.ConversionProgress;
+
+/**
+ * A progress bar over all running conversions with a button to cancel them. The jobs are polled, so the workers don't
+ * need to post each finished file to the EDT. The panel is only visible while a conversion is running.
+ *
+ * @author Thomas Chojecki
+ */
+public class JConversionProgress extends JPanel
+{
+  private static final long serialVersionUID = 6829203913627359283L;
+
+  private static final int REFRESH_INTERVAL = 200;
+
+  private final JProgressBar progressBar = new JProgressBar();
+  private final JButton cancelButton = new JButton("Cancel");
+  private final Timer timer;
+
+  // only used on the EDT
+  private final List<ConversionJob> jobs = new ArrayList<>();
+
+  public JConversionProgress()
+  {
+    super(new BorderLayout());
+    progressBar.setStringPainted(true);
+    add(progressBar, BorderLayout.CENTER);
+    add(cancelButton, BorderLayout.EAST);
+    setVisible(false);
+
+    cancelButton.addActionListener(new ActionListener()
+    {
+      @Override
+      public void actionPerformed(ActionEvent e)
+      {
+        for (ConversionJob job : jobs)
+        {
+          job.getProgress().cancel();
+        }
+        cancelButton.setEnabled(false);
+      }
+    });
+    timer = new Timer(REFRESH_INTERVAL, new ActionListener()
+    {
+      @Override
+      public void actionPerformed(ActionEvent e)
+      {
+        refresh();
+      }
+    });
+  }
+
+  /**
+   * Show the progress of the job until it is done. Needs to be called on the EDT.
+   *
+   * @param job is the submitted job.
+   */
+  public void track(ConversionJob job)
+  {
+    jobs.add(job);
+    if (!timer.isRunning())
+    {
+      cancelButton.setEnabled(true);
+      timer.start();
+    }
+    refresh();
+  }
+
+  private void refresh()
+  {
+    int total = 0;
+    int completed = 0;
+    for (Iterator<ConversionJob> it = jobs.iterator(); it.hasNext();)
+    {
+      ConversionProgress progress = it.next().getProgress();
+      if (progress.isDone())
+      {
+        it.remove();
+      }
+      else
+      {
+        total += progress.getTotal();
+        completed += progress.getCompleted();
+      }
+    }
+
+    if (jobs.isEmpty())
+    {
+      timer.stop();
+      setVisible(false);
+      return;
+    }
+    progressBar.setMaximum(total);
+    progressBar.setValue(completed);
+    progressBar.setString(completed + " / " + total);
+    if (!isVisible())
+    {
+      setVisible(true);
+      revalidate();
+    }
+  }
+}
@@ -5,16 +5,40 @@ package de.drop_converter.components;
 
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Image;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.dnd.DropTargetAdapter;
+import java.awt.dnd.DropTargetDragEvent;
+import java.awt.dnd.DropTargetDropEvent;
+import java.awt.dnd.DropTargetEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TooManyListenersException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.swing.JComponent;
 import javax.swing.JOptionPane;
 import javax.swing.TransferHandler;
+import javax.swing.TransferHandler.TransferSupport;
 
+import de.drop_converter.PluginRouter;
 import de.drop_converter.PluginWrapper;
+import de.drop_converter.conversion.ConversionEngine;
+import de.drop_converter.conversion.ConversionJob;
+import de.drop_converter.conversion.ConversionReport;
+import de.drop_converter.conversion.SnapshotTransferable;
+import de.drop_converter.jfr.CanImportEvent;
+import de.drop_converter.jfr.DropEvent;
+import de.drop_converter.jfr.Payloads;
+import de.drop_converter.listener.ConversionListener;
+import de.drop_converter.listener.ReportListener;
 import de.drop_converter.plugin.exception.ConverterException;
 
 /**
@@ -29,7 +53,18 @@ public class JDropableComponent extends JComponent
   private final static Logger LOG = Logger.getLogger(JDropableTransferHandler.class.getName());
 
   private final JPluginComboBox pluginChooser;
+  private final ConversionEngine engine;
   private final Image img;
+  private final CanImportCache canImportCache = new CanImportCache();
+
+  // routes the drops the selected plugin refuses to a capable plugin if set, otherwise only the selected plugin is used
+  private volatile PluginRouter router;
+
+  // shows the progress of the submitted jobs if set
+  private JConversionProgress progressView;
+
+  // drops that arrived while the plugins were warming up, only used on the EDT
+  private final List<PendingDrop> pendingDrops = new ArrayList<>();
 
   /**
    * Create a new drag and drop area that will be filled with the given image. The component has the same size as the
@@ -37,18 +72,57 @@ public class JDropableComponent extends JComponent
    * 
    * @param img is the Image that should be shown.
    * @param pluginChooser is the ComboBox which organize the plugins.
+   * @param engine is the engine that perform the conversion of the drops.
    */
-  public JDropableComponent(Image img, JPluginComboBox pluginChooser)
+  public JDropableComponent(Image img, JPluginComboBox pluginChooser, ConversionEngine engine)
   {
     this.pluginChooser = pluginChooser;
+    this.engine = engine;
     setTransferHandler(new JDropableTransferHandler());
     this.img = img;
+
+    // the queued drops are converted once the plugins are enabled
+    pluginChooser.addPropertyChangeListener(JPluginComboBox.WARMING_UP_PROPERTY, new PropertyChangeListener()
+    {
+      @Override
+      public void propertyChange(PropertyChangeEvent evt)
+      {
+        if (!pluginChooser.isWarmingUp())
+        {
+          submitPendingDrops();
+        }
+        repaint();
+      }
+    });
+
+    // The TransferHandler will not be notified if a drag session ends, so listen on the DropTarget for it.
+    // Without a display there is no DropTarget.
+    if (getDropTarget() != null)
+    {
+      try
+      {
+        getDropTarget().addDropTargetListener(new DragSessionListener());
+      }
+      catch (TooManyListenersException e)
+      {
+        LOG.log(Level.WARNING, "Could not track drag sessions. The canImport cache is disabled.", e);
+      }
+    }
   }
 
   @Override
   public void paint(Graphics g)
   {
     g.drawImage(img, 0, 0, getWidth(), getHeight(), new Color(255, 220, 200), this);
+    if (pluginChooser.isWarmingUp())
+    {
+      g.setColor(new Color(255, 255, 255, 160));
+      g.fillRect(0, 0, getWidth(), getHeight());
+      String text = pendingDrops.isEmpty() ? "Warming up..." : "Warming up, " + pendingDrops.size() + " drops queued...";
+      FontMetrics metrics = g.getFontMetrics();
+      g.setColor(Color.DARK_GRAY);
+      g.drawString(text, (getWidth() - metrics.stringWidth(text)) / 2, (getHeight() + metrics.getAscent()) / 2);
+    }
   }
 
   @Override
@@ -66,11 +140,164 @@ public class JDropableComponent extends JComponent
   }
 
   /**
-   * Handle the drag and drop for this component.
+   * Route the drops automatically to a plugin that declared one of the dropped MIME types. The selected plugin is still
+   * asked first, a drop is only routed if it refuses the drop or no plugin is selected.
+   *
+   * @param router is the index of the declared MIME types or null to use the selected plugin only.
+   */
+  public void setPluginRouter(PluginRouter router)
+  {
+    this.router = router;
+  }
+
+  /**
+   * Show the progress of the submitted conversions.
+   *
+   * @param progressView is the view for the progress or null to not show it.
+   */
+  public void setProgressView(JConversionProgress progressView)
+  {
+    this.progressView = progressView;
+  }
+
+  /**
+   * @return the router of the drops or null if only the selected plugin is used.
+   */
+  public PluginRouter getPluginRouter()
+  {
+    return router;
+  }
+
+  /**
+   * Find the plugin for the drop. The selected plugin is asked first, the drop is only routed if it refuses the drop or
+   * no plugin is selected.
+   *
+   * @return the plugin that takes the drop or null if no plugin fits.
+   */
+  private PluginWrapper target(TransferSupport support, PluginWrapper selectedItem)
+  {
+    if (selectedItem != null && canImportCache.canImport(selectedItem, support))
+    {
+      return selectedItem;
+    }
+    PluginRouter router = this.router;
+    return router != null ? router.route(support.getDataFlavors(), selectedItem) : null;
+  }
+
+  /**
+   * @return the number of <code>canImport</code> plugin calls that were avoided through the drag session cache.
+   */
+  public long getCanImportCacheHits()
+  {
+    return canImportCache.getHits();
+  }
+
+  /**
+   * Hand the drops that arrived during the warm up to the plugins they were dropped on. A drop is rejected if its plugin
+   * could not be enabled or was deselected before it was enabled. Marked plugins that are not enabled are skipped.
+   */
+  private void submitPendingDrops()
+  {
+    if (pendingDrops.isEmpty())
+    {
+      return;
+    }
+    List<PendingDrop> drops = new ArrayList<>(pendingDrops);
+    pendingDrops.clear();
+    LOG.fine("Converting " + drops.size() + " drops that arrived while the plugins were warming up");
+    JDropableTransferHandler transferHandler = (JDropableTransferHandler) getTransferHandler();
+    Set<String> rejected = new LinkedHashSet<>();
+    for (PendingDrop drop : drops)
+    {
+      PluginWrapper plugin = drop.targets.get(0);
+      if (!plugin.isPluginEnabled())
+      {
+        LOG.warning("Plugin " + plugin.getPluginName() + " is not enabled, the queued drop is discarded.");
+        transferHandler.reject(drop.data, plugin, drop.event);
+        rejected.add(plugin.getPluginName());
+        continue;
+      }
+
+      List<PluginWrapper> targets = new ArrayList<>();
+      for (PluginWrapper target : drop.targets)
+      {
+        if (target.isPluginEnabled())
+        {
+          targets.add(target);
+        }
+        else
+        {
+          LOG.warning("Plugin " + target.getPluginName() + " is not enabled, it does not get the queued drop.");
+        }
+      }
+      transferHandler.submit(new TransferSupport(this, drop.data), drop.data, targets, drop.event);
+    }
+
+    if (!rejected.isEmpty())
+    {
+      String message = "The queued drops were not converted, because these plugins could not be enabled or were deselected: "
+          + rejected;
+      JOptionPane.showMessageDialog(pluginChooser, message, "Drops discarded", JOptionPane.WARNING_MESSAGE);
+    }
+  }
+
+  /**
+   * A drop that waits for its plugins. The drop event is committed once the drop was handed over.
+   */
+  private static class PendingDrop
+  {
+    final SnapshotTransferable data;
+
+    // the selected plugin followed by the marked plugins at the time of the drop
+    final List<PluginWrapper> targets;
+
+    final DropEvent event;
+
+    PendingDrop(SnapshotTransferable data, List<PluginWrapper> targets, DropEvent event)
+    {
+      this.data = data;
+      this.targets = targets;
+      this.event = event;
+    }
+  }
+
+  /**
+   * Clear the <code>canImport</code> cache if a drag session starts or ends.
+   */
+  private class DragSessionListener extends DropTargetAdapter
+  {
+    @Override
+    public void dragEnter(DropTargetDragEvent dtde)
+    {
+      canImportCache.clear();
+    }
+
+    @Override
+    public void dragExit(DropTargetEvent dte)
+    {
+      endSession();
+    }
+
+    @Override
+    public void drop(DropTargetDropEvent dtde)
+    {
+      endSession();
+    }
+
+    private void endSession()
+    {
+      canImportCache.clear();
+      LOG.finer("canImport cache: " + canImportCache.getHits() + " plugin calls avoided, " + canImportCache.getMisses() + " plugin calls");
+    }
+  }
+
+  /**
+   * Handle the drag and drop for this component. The drops will be converted by the <code>ConversionEngine</code>, so
+   * the EDT is not blocked by the plugin.
    * 
    * @author Thomas Chojecki
    */
-  private class JDropableTransferHandler extends TransferHandler
+  private class JDropableTransferHandler extends TransferHandler implements ConversionListener, ReportListener
   {
     private static final long serialVersionUID = -6594115979366685023L;
 
@@ -78,34 +305,207 @@ public class JDropableComponent extends JComponent
     public boolean canImport(TransferSupport support)
     {
       PluginWrapper selectedItem = (PluginWrapper) pluginChooser.getSelectedItem();
-      if (selectedItem != null)
+      if (selectedItem == null && router == null)
+      {
+        return false;
+      }
+      CanImportEvent event = new CanImportEvent();
+      event.begin();
+      // a routed plugin is not asked, the declaration of the flavor is enough
+      PluginWrapper target = target(support, selectedItem);
+      event.end();
+      if (target == null && selectedItem == null)
+      {
+        return false;
+      }
+      // the drop action can only be set for drops, not for a paste
+      if (support.isDrop())
       {
         support.setDropAction(COPY);
-        return selectedItem.getPlugin().canImport(support);
       }
-      return false;
+      if (event.shouldCommit())
+      {
+        event.setPlugin(target != null ? target : selectedItem);
+        event.flavors = Payloads.flavors(support.getDataFlavors());
+        event.accepted = target != null;
+        event.commit();
+      }
+      return target != null;
     }
 
     @Override
     public boolean importData(TransferSupport support)
     {
+      DropEvent event = new DropEvent();
+      event.begin();
       PluginWrapper selectedItem = (PluginWrapper) pluginChooser.getSelectedItem();
+      PluginWrapper routedItem = target(support, selectedItem);
+      if (routedItem != null && routedItem != selectedItem)
+      {
+        // select the plugin, so the user sees who converts the drop and the plugin gets enabled
+        pluginChooser.setSelectedItem(routedItem);
+        if (pluginChooser.getSelectedItem() == routedItem)
+        {
+          selectedItem = routedItem;
+        }
+        else
+        {
+          LOG.fine("Could not select plugin " + routedItem.getPluginName() + ", using the selected plugin instead.");
+        }
+      }
       if (selectedItem != null)
       {
-        try
+        // The drop data is only valid on the EDT while the drop is in progress, so capture it before handing it over.
+        SnapshotTransferable data = SnapshotTransferable.capture(support.getTransferable());
+        // the selected plugin comes first
+        List<PluginWrapper> targets = pluginChooser.getTargets();
+        if (pluginChooser.isWarmingUp())
         {
-          return selectedItem.getPlugin().importData(support);
+          pendingDrops.add(new PendingDrop(data, targets, event));
+          repaint();
+          LOG.fine("Plugin " + selectedItem.getPluginName() + " is warming up, the drop is queued.");
+          return true;
         }
-        catch (ConverterException e)
+        return submit(support, data, targets, event);
+      }
+      commitNoPlugin(event, support.getDataFlavors());
+      return false;
+    }
+
+    /**
+     * Hand the captured drop to the selected plugin and the marked plugins.
+     *
+     * @param targets are the selected plugin followed by the marked plugins.
+     */
+    private boolean submit(TransferSupport support, SnapshotTransferable data, List<PluginWrapper> targets, DropEvent event)
+    {
+      if (targets.size() > 1)
+      {
+        return fanOut(support, data, targets, event);
+      }
+
+      ConversionJob job = new ConversionJob(targets.get(0), support.getComponent(), data);
+      if (engine.submit(job, this))
+      {
+        commit(event, job, DropEvent.SUBMITTED);
+        track(job);
+        return true;
+      }
+      commit(event, job, DropEvent.REJECTED);
+
+      String error = "Converter busy";
+      String message = "Too many conversions are running. Please try again later.";
+      JOptionPane.showMessageDialog(pluginChooser, message, error, JOptionPane.WARNING_MESSAGE);
+      return false;
+    }
+
+    /**
+     * Hand the drop to several plugins. The data is captured once and the immutable snapshot is shared by all jobs, so
+     * the plugins convert in parallel without reading the drop again.
+     */
+    private boolean fanOut(TransferSupport support, SnapshotTransferable data, List<PluginWrapper> targets, DropEvent event)
+    {
+      ConversionReport report = new ConversionReport(targets, this);
+      List<ConversionJob> jobs = new ArrayList<>();
+      for (PluginWrapper target : targets)
+      {
+        // the first target is the selected plugin, which already accepted the drop
+        if (jobs.isEmpty() || canImportCache.canImport(target, support))
         {
-          String error = "Performing convert with plugin " + selectedItem.getPluginName() + " failed.";
-          String message = "The plugin throws an error durring the convert: " + e.getMessage();
+          jobs.add(new ConversionJob(target, support.getComponent(), data));
+        }
+        else
+        {
+          report.skipped(target, ConversionReport.Outcome.SKIPPED);
+        }
+      }
+
+      int submitted = engine.submitAll(jobs, report);
+      for (ConversionJob job : jobs)
+      {
+        track(job);
+      }
+      commit(event, jobs.get(0), submitted > 0 ? DropEvent.SUBMITTED : DropEvent.REJECTED);
+      LOG.fine("Drop handed to " + submitted + " of " + targets.size() + " plugins");
+      return submitted > 0;
+    }
+
+    /**
+     * Discard a queued drop, because its plugin is not enabled.
+     */
+    private void reject(SnapshotTransferable data, PluginWrapper plugin, DropEvent event)
+    {
+      commit(event, new ConversionJob(plugin, JDropableComponent.this, data), DropEvent.REJECTED);
+    }
+
+    private void track(ConversionJob job)
+    {
+      if (progressView != null)
+      {
+        progressView.track(job);
+      }
+    }
+
+    private void commitNoPlugin(DropEvent event, DataFlavor[] flavors)
+    {
+      event.end();
+      if (event.shouldCommit())
+      {
+        event.flavors = Payloads.flavors(flavors);
+        event.outcome = DropEvent.NO_PLUGIN;
+        event.commit();
+      }
+    }
+
+    private void commit(DropEvent event, ConversionJob job, String outcome)
+    {
+      event.end();
+      if (event.shouldCommit())
+      {
+        event.setPlugin(job.getPlugin());
+        event.flavors = Payloads.flavors(job.getData().getTransferDataFlavors());
+        event.payloadSize = Payloads.size(job.getData());
+        event.outcome = outcome;
+        event.commit();
+      }
+    }
+
+    @Override
+    public void conversionFinished(ConversionJob job, boolean result)
+    {
+      LOG.fine("Plugin " + job.getPlugin().getPluginName() + " finished convert with result " + result);
+    }
 
-          LOG.log(Level.SEVERE, message, e);
-          JOptionPane.showMessageDialog(pluginChooser, message, error, JOptionPane.ERROR_MESSAGE);
+    @Override
+    public void reportFinished(ConversionReport report)
+    {
+      for (ConversionReport.Entry entry : report.getEntries())
+      {
+        if (entry.getException() != null)
+        {
+          LOG.log(Level.SEVERE, "Plugin " + entry.getPlugin().getPluginName() + " failed to convert the drop.", entry.getException());
         }
       }
-      return false;
+
+      if (report.isSuccessful())
+      {
+        LOG.fine("Drop converted by all plugins:\n" + report);
+      }
+      else
+      {
+        LOG.warning("Drop not converted by all plugins:\n" + report);
+        JOptionPane.showMessageDialog(pluginChooser, report.toString(), "Conversion report", JOptionPane.WARNING_MESSAGE);
+      }
+    }
+
+    @Override
+    public void conversionFailed(ConversionJob job, ConverterException e)
+    {
+      String error = "Performing convert with plugin " + job.getPlugin().getPluginName() + " failed.";
+      String message = "The plugin throws an error durring the convert: " + e.getMessage();
+
+      LOG.log(Level.SEVERE, message, e);
+      JOptionPane.showMessageDialog(pluginChooser, message, error, JOptionPane.ERROR_MESSAGE);
     }
   }
 }
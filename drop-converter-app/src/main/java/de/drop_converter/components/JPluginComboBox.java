@@ -12,24 +12,32 @@ import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
-import java.net.URLClassLoader;
 import java.nio.file.CopyOption;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.swing.AbstractListModel;
 import javax.swing.ComboBoxModel;
 import javax.swing.JComboBox;
+import javax.swing.SwingUtilities;
 import javax.swing.TransferHandler;
 
 import de.drop_converter.PluginHandler;
+import de.drop_converter.PluginWarmPool;
 import de.drop_converter.PluginWrapper;
+import de.drop_converter.jfr.PluginSelectionEvent;
 import de.drop_converter.listener.PluginListener;
 import de.drop_converter.plugin.exception.InitializationException;
 
@@ -43,9 +51,47 @@ public class JPluginComboBox extends JComboBox<PluginWrapper>
   private static final long serialVersionUID = -2505280443579300955L;
   private final static Logger LOG = Logger.getLogger(JPluginComboBox.class.getName());
 
+  /**
+   * The bound property that reports if the selected plugin is being enabled.
+   */
+  public static final String WARMING_UP_PROPERTY = "warmingUp";
+
+  // the maximum time in seconds to wait for a plugin that is being enabled or disabled on dispose
+  private static final long LIFECYCLE_TIMEOUT = 30;
+
   private final PluginHandler handler;
   private PluginWrapper lastPlugin;
 
+  // enables and disables the plugins in the order of the selections, so the EDT does not wait for a plugin
+  private final ExecutorService lifecycleExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+  {
+    @Override
+    public Thread newThread(Runnable r)
+    {
+      Thread thread = new Thread(r, "plugin-lifecycle");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  // counts the selections, written on the EDT and read on the lifecycle thread to skip superseded selections
+  private volatile int selection = 0;
+
+  // true until the selected plugin is enabled, only used on the EDT
+  private boolean selectionWarmingUp = false;
+
+  // the number of marked plugins that are being enabled, only used on the EDT
+  private int pendingTargets = 0;
+
+  // true while the selected or a marked plugin is being enabled, only used on the EDT
+  private boolean warmingUp = false;
+
+  // plugins that get the drops in addition to the selected one, only used on the EDT
+  private final Set<PluginWrapper> targets = new LinkedHashSet<>();
+
+  // keeps deselected plugins enabled if set, only used on the lifecycle thread
+  private volatile PluginWarmPool warmPool;
+
   /**
    * Create a new ComboBox that contains the loaded plugins.
    * 
@@ -78,6 +124,7 @@ public class JPluginComboBox extends JComboBox<PluginWrapper>
 
     Model model = new Model(pluginHandler.getPlugins());
     handler.addPluginListener(model);
+    handler.addPluginListener(new TargetListener());
     setModel(model);
 
     if (plugins.size() > 0)
@@ -87,34 +134,368 @@ public class JPluginComboBox extends JComboBox<PluginWrapper>
   }
 
   /**
-   * If the plugin state changed, we need to disable the old plugin and enable the new one.
+   * Keep deselected plugins enabled in the pool instead of disabling them right away. The pool is used on the lifecycle
+   * thread of the chooser, so it needs to be created with {@link #getLifecycleExecutor()}.
    * 
-   * @param newPlugin the new plugin that was selected.
+   * @param warmPool is the pool of enabled plugins or null to disable a plugin once it is deselected.
    */
-  private void pluginStateChanged(PluginWrapper newPlugin)
+  public void setWarmPool(PluginWarmPool warmPool)
   {
-    if (lastPlugin != null && lastPlugin.isPluginEnabled())
+    this.warmPool = warmPool;
+    if (warmPool != null)
     {
-      try
+      warmPool.setEvictionListener(new Runnable()
       {
-        lastPlugin.disablePlugin();
-      }
-      catch (InitializationException ex)
+        @Override
+        public void run()
+        {
+          SwingUtilities.invokeLater(new Runnable()
+          {
+            @Override
+            public void run()
+            {
+              enableUsedPlugins();
+            }
+          });
+        }
+      });
+    }
+  }
+
+  /**
+   * @return the executor that enables and disables the plugins of the chooser, one after another.
+   */
+  public Executor getLifecycleExecutor()
+  {
+    return lifecycleExecutor;
+  }
+
+  /**
+   * Stop the lifecycle thread once the scheduled enables and disables are done. Needs to be called before the plugin
+   * handler is disposed, so no plugin gets enabled while it is destroyed.
+   */
+  public void dispose()
+  {
+    lifecycleExecutor.shutdown();
+    try
+    {
+      if (!lifecycleExecutor.awaitTermination(LIFECYCLE_TIMEOUT, TimeUnit.SECONDS))
       {
-        LOG.log(Level.SEVERE, "Could not disable deselected plugin " + lastPlugin.getPluginName(), ex);
+        LOG.warning("A plugin is still being enabled or disabled while shutting down the plugin chooser.");
       }
     }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return true if the selected plugin or a marked plugin is not enabled yet. Changes are reported as
+   *         {@link #WARMING_UP_PROPERTY}. A plugin that could not be enabled ends the warm up as well.
+   */
+  public boolean isWarmingUp()
+  {
+    return warmingUp;
+  }
+
+  private void updateWarmingUp()
+  {
+    boolean old = warmingUp;
+    warmingUp = selectionWarmingUp || pendingTargets > 0;
+    firePropertyChange(WARMING_UP_PROPERTY, old, warmingUp);
+  }
+
+  /**
+   * Run the task on the lifecycle thread.
+   * 
+   * @return false if the chooser is disposed and the task will not run.
+   */
+  private boolean execute(Runnable task)
+  {
+    try
+    {
+      lifecycleExecutor.execute(task);
+      return true;
+    }
+    catch (RejectedExecutionException e)
+    {
+      LOG.fine("The plugin chooser is disposed, plugins are not enabled or disabled anymore.");
+      return false;
+    }
+  }
+
+  /**
+   * Enable the selected and the marked plugins again if the warm pool disabled them as stages of a pipeline.
+   */
+  private void enableUsedPlugins()
+  {
+    final List<PluginWrapper> used = getTargets();
+    execute(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        for (PluginWrapper plugin : used)
+        {
+          if (!plugin.isPluginEnabled())
+          {
+            try
+            {
+              plugin.enablePlugin();
+            }
+            catch (InitializationException ex)
+            {
+              LOG.log(Level.SEVERE, "Could not enable used plugin " + plugin.getPluginName(), ex);
+            }
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * If the plugin state changed, we need to disable the old plugin and enable the new one. With a warm pool, the old
+   * plugin stays enabled until the pool evicts it. The plugins are switched on the lifecycle thread, so a plugin that
+   * takes long to enable does not block the EDT. If the user selects another plugin before the switch started, the
+   * superseded plugin will not be enabled at all.
+   * 
+   * @param newPlugin the new plugin that was selected.
+   */
+  private void pluginStateChanged(final PluginWrapper newPlugin)
+  {
+    final PluginSelectionEvent event = new PluginSelectionEvent();
+    event.begin();
+    final PluginWrapper previousPlugin = lastPlugin;
+    // a drop target stays enabled until it is unmarked
+    final boolean releasePrevious = previousPlugin != null && previousPlugin != newPlugin && !targets.contains(previousPlugin);
+    final int generation = ++selection;
     lastPlugin = newPlugin;
+    selectionWarmingUp = true;
+    updateWarmingUp();
+
+    boolean scheduled = execute(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        boolean success = true;
+        boolean warm = warmPool != null && warmPool.take(newPlugin);
+        // a superseded plugin was never enabled, so there is nothing to release
+        if (releasePrevious && previousPlugin.isPluginEnabled())
+        {
+          success = release(previousPlugin);
+        }
+        if (generation == selection)
+        {
+          try
+          {
+            newPlugin.enablePlugin();
+          }
+          catch (InitializationException | RuntimeException ex)
+          {
+            success = false;
+            LOG.log(Level.SEVERE, "Could not enable selected plugin " + newPlugin.getPluginName(), ex);
+          }
+          SwingUtilities.invokeLater(new Runnable()
+          {
+            @Override
+            public void run()
+            {
+              if (generation == selection)
+              {
+                selectionWarmingUp = false;
+                updateWarmingUp();
+              }
+            }
+          });
+        }
+        else
+        {
+          LOG.fine("Plugin " + newPlugin.getPluginName() + " was deselected before it was enabled.");
+        }
+
+        event.end();
+        if (event.shouldCommit())
+        {
+          event.setPlugin(newPlugin);
+          event.previousPlugin = previousPlugin != null ? previousPlugin.getPluginName() : null;
+          event.success = success;
+          event.warm = warm;
+          event.commit();
+        }
+      }
+    });
+    if (!scheduled)
+    {
+      selectionWarmingUp = false;
+      updateWarmingUp();
+    }
+  }
+
+  /**
+   * Put a plugin that is not used anymore into the warm pool or disable it if there is no pool. Needs to be called on
+   * the lifecycle thread.
+   * 
+   * @return false if the plugin could not be disabled.
+   */
+  private boolean release(PluginWrapper plugin)
+  {
+    if (warmPool != null)
+    {
+      warmPool.release(plugin);
+      return true;
+    }
     try
     {
-      lastPlugin.enablePlugin();
+      plugin.disablePlugin();
+      return true;
     }
     catch (InitializationException ex)
     {
-      LOG.log(Level.SEVERE, "Could not enable selected plugin " + lastPlugin.getPluginName(), ex);
+      LOG.log(Level.SEVERE, "Could not disable unused plugin " + plugin.getPluginName(), ex);
+      return false;
     }
   }
 
+  /**
+   * @param plugin is a plugin of the chooser.
+   * @return true if the plugin gets the drops in addition to the selected plugin.
+   */
+  public boolean isTarget(PluginWrapper plugin)
+  {
+    return targets.contains(plugin);
+  }
+
+  /**
+   * Mark a plugin as drop target. A drop will be converted by the selected plugin and all marked plugins. Marked
+   * plugins stay enabled until they are unmarked, even if another plugin gets selected. The chooser is warming up until
+   * a marked plugin is enabled, a plugin that could not be enabled is unmarked again.
+   * 
+   * @param plugin is the plugin that should be marked or unmarked.
+   * @param target true if the plugin should get the drops.
+   */
+  public void setTarget(final PluginWrapper plugin, boolean target)
+  {
+    if (target && targets.add(plugin))
+    {
+      pendingTargets++;
+      updateWarmingUp();
+      boolean scheduled = execute(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          if (warmPool != null)
+          {
+            warmPool.take(plugin);
+          }
+          boolean enabled = false;
+          try
+          {
+            plugin.enablePlugin();
+            enabled = true;
+          }
+          catch (InitializationException | RuntimeException ex)
+          {
+            LOG.log(Level.SEVERE, "Could not enable plugin " + plugin.getPluginName() + " as drop target", ex);
+          }
+
+          final boolean failed = !enabled;
+          SwingUtilities.invokeLater(new Runnable()
+          {
+            @Override
+            public void run()
+            {
+              if (failed)
+              {
+                targets.remove(plugin);
+              }
+              pendingTargets--;
+              updateWarmingUp();
+            }
+          });
+        }
+      });
+      if (!scheduled)
+      {
+        pendingTargets--;
+        updateWarmingUp();
+      }
+    }
+    else if (!target && targets.remove(plugin) && plugin != lastPlugin)
+    {
+      execute(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          if (plugin.isPluginEnabled())
+          {
+            release(plugin);
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * @return the selected plugin followed by the marked plugins. Empty if no plugin is selected and none is marked.
+   */
+  public List<PluginWrapper> getTargets()
+  {
+    Set<PluginWrapper> list = new LinkedHashSet<>();
+    PluginWrapper selected = (PluginWrapper) getSelectedItem();
+    if (selected != null)
+    {
+      list.add(selected);
+    }
+    list.addAll(targets);
+    return new ArrayList<>(list);
+  }
+
+  /**
+   * Forget removed plugins, so they will not get any drops or be disabled by the warm pool.
+   */
+  private class TargetListener implements PluginListener
+  {
+    @Override
+    public void addedPlugin(PluginWrapper plugin)
+    {}
+
+    @Override
+    public void removedPlugin(final PluginWrapper plugin)
+    {
+      SwingUtilities.invokeLater(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          targets.remove(plugin);
+        }
+      });
+      execute(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          if (warmPool != null)
+          {
+            warmPool.take(plugin);
+          }
+        }
+      });
+    }
+
+    @Override
+    public void initializedPlugin(PluginWrapper plugin)
+    {}
+
+    @Override
+    public void destroyedPlugin(PluginWrapper plugin)
+    {}
+  }
+
   /**
    * Handle incoming drag and drops for the ComboBox. New plugins can be drag and droped into the ComboBox to install it
    * into the plugin directory.
@@ -141,7 +522,7 @@ public class JPluginComboBox extends JComboBox<PluginWrapper>
         {
           Transferable transferable = support.getTransferable();
           List<File> transferData = (List<File>) transferable.getTransferData(DataFlavor.javaFileListFlavor);
-          ArrayList<URL> plugins = new ArrayList<URL>();
+          ArrayList<File> plugins = new ArrayList<File>();
           for (File file : transferData)
           {
             if (file.isDirectory())
@@ -156,7 +537,7 @@ public class JPluginComboBox extends JComboBox<PluginWrapper>
               {
                 File dest = new File(CONVERTER_PLUGIN_DIR, file.getName());
                 Files.copy(file.toPath(), dest.toPath(), new CopyOption[0]);
-                plugins.add(dest.toURI().toURL());
+                plugins.add(dest);
               }
               catch (IOException e)
               {
@@ -168,7 +549,10 @@ public class JPluginComboBox extends JComboBox<PluginWrapper>
           // Only reload if at least one plugin was added.
           if (!plugins.isEmpty())
           {
-            handler.loadPlugins(new URLClassLoader(plugins.toArray(new URL[0])));
+            for (File plugin : plugins)
+            {
+              handler.loadPluginJar(plugin);
+            }
             return true;
           }
           return false;
@@ -235,37 +619,98 @@ public class JPluginComboBox extends JComboBox<PluginWrapper>
       return selectedItem;
     }
 
+    /**
+     * Plugins that are not disabled by the user will be shown, even if they are not initialized yet. They will be
+     * initialized on selection.
+     */
     @Override
     public void addedPlugin(PluginWrapper plugin)
-    {}
+    {
+      if (!plugin.isPluginExcluded())
+      {
+        showPlugin(plugin);
+      }
+    }
 
     @Override
     public void removedPlugin(PluginWrapper plugin)
-    {}
+    {
+      hidePlugin(plugin);
+    }
 
     @Override
     public void initializedPlugin(PluginWrapper plugin)
     {
-      plugins.add(plugin);
-      if (selectedItem == null)
+      showPlugin(plugin);
+    }
+
+    @Override
+    public void destroyedPlugin(PluginWrapper plugin)
+    {
+      if (plugin.isPluginExcluded())
       {
-        selectedItem = plugin;
+        hidePlugin(plugin);
       }
+    }
 
+    private void showPlugin(final PluginWrapper plugin)
+    {
+      // plugins are loaded and initialized in the background, but the model need to be changed on the EDT
+      if (!SwingUtilities.isEventDispatchThread())
+      {
+        SwingUtilities.invokeLater(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            showPlugin(plugin);
+          }
+        });
+        return;
+      }
+
+      if (plugins.contains(plugin))
+      {
+        return;
+      }
+
+      plugins.add(plugin);
       int indexItem = plugins.size() - 1;
-      fireContentsChanged(this, indexItem, indexItem);
+      fireIntervalAdded(this, indexItem, indexItem);
+      if (selectedItem == null)
+      {
+        // select through the model, so the ComboBox will enable the plugin
+        setSelectedItem(plugin);
+      }
     }
 
-    @Override
-    public void destroyedPlugin(PluginWrapper plugin)
+    private void hidePlugin(final PluginWrapper plugin)
     {
-      plugins.remove(plugin);
+      if (!SwingUtilities.isEventDispatchThread())
+      {
+        SwingUtilities.invokeLater(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            hidePlugin(plugin);
+          }
+        });
+        return;
+      }
+
+      int indexItem = plugins.indexOf(plugin);
+      if (indexItem == -1)
+      {
+        return;
+      }
+
+      plugins.remove(indexItem);
+      fireIntervalRemoved(this, indexItem, indexItem);
       if (plugin.equals(selectedItem))
       {
-        selectedItem = null;
+        setSelectedItem(plugins.isEmpty() ? null : plugins.get(0));
       }
-      int indexItem = plugins.size() - 1;
-      fireContentsChanged(this, indexItem, indexItem);
     }
   }
 }
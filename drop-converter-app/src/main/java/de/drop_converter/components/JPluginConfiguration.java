@@ -94,6 +94,7 @@ public class JPluginConfiguration extends JPanel implements PluginListener
       PluginWrapper pluginWrapper = plugins.get(rowIndex);
       try
       {
+        pluginWrapper.setPluginExcluded(!flag);
         if (flag)
         {
           pluginWrapper.initializePlugin();
@@ -133,7 +134,7 @@ public class JPluginConfiguration extends JPanel implements PluginListener
         case 5:
           return pluginWrapper.getAuthorEmail();
         case 6:
-          return pluginWrapper.isPluginInitialized();
+          return !pluginWrapper.isPluginExcluded();
       }
       return null;
     }
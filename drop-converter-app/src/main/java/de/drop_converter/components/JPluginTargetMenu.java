@@ -0,0 +1,79 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.components;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JMenu;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
+
+import de.drop_converter.PluginWrapper;
+
+/**
+ * A menu with a check box for each plugin of the plugin chooser. Checked plugins get the drops in addition to the
+ * selected plugin. The entries are created each time the menu opens, so added or removed plugins are shown.
+ *
+ * @author Thomas Chojecki
+ */
+public class JPluginTargetMenu extends JMenu
+{
+  private static final long serialVersionUID = 3419583563254917384L;
+
+  private final JPluginComboBox pluginChooser;
+
+  public JPluginTargetMenu(JPluginComboBox pluginChooser)
+  {
+    super("Convert with");
+    this.pluginChooser = pluginChooser;
+    addMenuListener(new MenuListener()
+    {
+      @Override
+      public void menuSelected(MenuEvent e)
+      {
+        createEntries();
+      }
+
+      @Override
+      public void menuDeselected(MenuEvent e)
+      {}
+
+      @Override
+      public void menuCanceled(MenuEvent e)
+      {}
+    });
+  }
+
+  private void createEntries()
+  {
+    removeAll();
+    Object selected = pluginChooser.getSelectedItem();
+    for (int i = 0; i < pluginChooser.getItemCount(); i++)
+    {
+      final PluginWrapper plugin = pluginChooser.getItemAt(i);
+      final JCheckBoxMenuItem item = new JCheckBoxMenuItem(plugin.getPluginName());
+      if (plugin == selected)
+      {
+        // the selected plugin always gets the drops
+        item.setSelected(true);
+        item.setEnabled(false);
+      }
+      else
+      {
+        item.setSelected(pluginChooser.isTarget(plugin));
+        item.addActionListener(new ActionListener()
+        {
+          @Override
+          public void actionPerformed(ActionEvent e)
+          {
+            pluginChooser.setTarget(plugin, item.isSelected());
+          }
+        });
+      }
+      add(item);
+    }
+  }
+}
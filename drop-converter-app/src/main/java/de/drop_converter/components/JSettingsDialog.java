@@ -9,6 +9,7 @@ import java.util.logging.Logger;
 import javax.swing.JDialog;
 import javax.swing.JPanel;
 import javax.swing.JTabbedPane;
+import javax.swing.SwingUtilities;
 
 import de.drop_converter.Converter;
 import de.drop_converter.PluginHandler;
@@ -90,21 +91,41 @@ public class JSettingsDialog extends JDialog implements PluginListener
 
   @Override
   public void addedPlugin(PluginWrapper plugin)
-  {
-    addTab(plugin);
-  }
+  {}
 
   @Override
-  public void removedPlugin(PluginWrapper plugin)
+  public void removedPlugin(final PluginWrapper plugin)
   {
-    removeTab(plugin);
+    SwingUtilities.invokeLater(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        removeTab(plugin);
+      }
+    });
   };
 
+  /**
+   * The configuration panel will be requested after the plugin was initialized. Plugins are initialized in the
+   * background, so the tab will be added on the EDT.
+   */
   @Override
-  public void initializedPlugin(PluginWrapper plugin)
-  {}
+  public void initializedPlugin(final PluginWrapper plugin)
+  {
+    SwingUtilities.invokeLater(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        addTab(plugin);
+      }
+    });
+  }
 
   @Override
   public void destroyedPlugin(PluginWrapper plugin)
-  {}
+  {
+    removedPlugin(plugin);
+  }
 }
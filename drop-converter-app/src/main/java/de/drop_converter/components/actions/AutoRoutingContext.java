@@ -0,0 +1,46 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.components.actions;
+
+import java.awt.event.ActionEvent;
+
+import javax.swing.AbstractAction;
+
+import de.drop_converter.Configuration;
+import de.drop_converter.PluginRouter;
+import de.drop_converter.components.JDropableComponent;
+
+/**
+ * Switch the automatic routing of drops on and off. Should be added as <code>JCheckBoxMenuItem</code>.
+ *
+ * @author Thomas Chojecki
+ */
+public class AutoRoutingContext extends AbstractAction
+{
+  private static final long serialVersionUID = -4470139522117236807L;
+
+  private final Configuration config;
+
+  private final JDropableComponent dropComponent;
+
+  private final PluginRouter router;
+
+  public AutoRoutingContext(Configuration config, JDropableComponent dropComponent, PluginRouter router)
+  {
+    super("Choose plugin automatically");
+    this.config = config;
+    this.dropComponent = dropComponent;
+    this.router = router;
+    putValue(SELECTED_KEY, dropComponent.getPluginRouter() != null);
+  }
+
+  @Override
+  public void actionPerformed(ActionEvent e)
+  {
+    boolean autoRouting = Boolean.TRUE.equals(getValue(SELECTED_KEY));
+    dropComponent.setPluginRouter(autoRouting ? router : null);
+    config.setAutoRouting(autoRouting);
+  }
+
+}
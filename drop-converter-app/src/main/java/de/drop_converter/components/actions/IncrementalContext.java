@@ -0,0 +1,47 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.components.actions;
+
+import java.awt.event.ActionEvent;
+
+import javax.swing.AbstractAction;
+
+import de.drop_converter.Configuration;
+import de.drop_converter.conversion.ConversionEngine;
+import de.drop_converter.conversion.ManifestStore;
+
+/**
+ * Switch between converting all files of a dropped directory and only the changed ones. Should be added as
+ * <code>JCheckBoxMenuItem</code>.
+ *
+ * @author Thomas Chojecki
+ */
+public class IncrementalContext extends AbstractAction
+{
+  private static final long serialVersionUID = 2265038185736154081L;
+
+  private final Configuration config;
+
+  private final ConversionEngine engine;
+
+  private final ManifestStore manifestStore;
+
+  public IncrementalContext(Configuration config, ConversionEngine engine, ManifestStore manifestStore)
+  {
+    super("Convert changed files only");
+    this.config = config;
+    this.engine = engine;
+    this.manifestStore = manifestStore;
+    putValue(SELECTED_KEY, engine.getManifestStore() != null);
+  }
+
+  @Override
+  public void actionPerformed(ActionEvent e)
+  {
+    boolean incremental = Boolean.TRUE.equals(getValue(SELECTED_KEY));
+    engine.setManifestStore(incremental ? manifestStore : null);
+    config.setIncrementalConversion(incremental);
+  }
+
+}
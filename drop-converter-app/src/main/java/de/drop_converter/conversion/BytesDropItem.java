@@ -0,0 +1,75 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import de.drop_converter.plugin.DropItem;
+import de.drop_converter.plugin.MappedContent;
+
+/**
+ * A dropped item that is already in memory, e.g. a dropped text.
+ *
+ * @author Thomas Chojecki
+ */
+public class BytesDropItem implements DropItem
+{
+  private final String name;
+
+  private final byte[] content;
+
+  /**
+   * @param name is the name of the item.
+   * @param content is the content. It will not be copied and shall not be changed.
+   */
+  public BytesDropItem(String name, byte[] content)
+  {
+    this.name = name;
+    this.content = content;
+  }
+
+  @Override
+  public String getName()
+  {
+    return name;
+  }
+
+  @Override
+  public long getSize()
+  {
+    return content.length;
+  }
+
+  @Override
+  public ReadableByteChannel openChannel()
+  {
+    return Channels.newChannel(openStream());
+  }
+
+  @Override
+  public InputStream openStream()
+  {
+    return new ByteArrayInputStream(content);
+  }
+
+  /**
+   * The content is already in memory, so the view is backed by the content array.
+   */
+  @Override
+  public MappedContent map()
+  {
+    ByteBuffer buffer = ByteBuffer.wrap(content).asReadOnlyBuffer();
+    return new ChunkedContent(new ByteBuffer[] { buffer }, Math.max(1, content.length), content.length, null);
+  }
+
+  @Override
+  public String toString()
+  {
+    return name;
+  }
+}
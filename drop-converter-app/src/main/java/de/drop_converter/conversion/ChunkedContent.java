@@ -0,0 +1,78 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import de.drop_converter.plugin.MappedContent;
+
+/**
+ * A read-only view over a list of buffers. The buffers will not be copied, each request returns a duplicate.
+ *
+ * @author Thomas Chojecki
+ */
+class ChunkedContent implements MappedContent
+{
+  private final ByteBuffer[] chunks;
+
+  private final int chunkSize;
+
+  private final long size;
+
+  private final Runnable onClose;
+
+  private final AtomicBoolean closed = new AtomicBoolean();
+
+  /**
+   * @param chunks are the read-only buffers.
+   * @param chunkSize is the size of each buffer, only the last one may be smaller.
+   * @param size is the size of the whole content.
+   * @param onClose will be called once if the view is closed. May be null.
+   */
+  ChunkedContent(ByteBuffer[] chunks, int chunkSize, long size, Runnable onClose)
+  {
+    this.chunks = chunks;
+    this.chunkSize = chunkSize;
+    this.size = size;
+    this.onClose = onClose;
+  }
+
+  @Override
+  public long getSize()
+  {
+    return size;
+  }
+
+  @Override
+  public int getChunkSize()
+  {
+    return chunkSize;
+  }
+
+  @Override
+  public int getChunkCount()
+  {
+    return chunks.length;
+  }
+
+  @Override
+  public ByteBuffer getChunk(int index)
+  {
+    if (closed.get())
+    {
+      throw new IllegalStateException("Content was already closed");
+    }
+    return chunks[index].duplicate();
+  }
+
+  @Override
+  public void close()
+  {
+    if (closed.compareAndSet(false, true) && onClose != null)
+    {
+      onClose.run();
+    }
+  }
+}
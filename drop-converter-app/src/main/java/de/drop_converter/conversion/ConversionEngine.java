@@ -0,0 +1,548 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.SwingUtilities;
+import javax.swing.TransferHandler.TransferSupport;
+
+import de.drop_converter.PluginWrapper;
+import de.drop_converter.jfr.ConversionEvent;
+import de.drop_converter.jfr.Payloads;
+import de.drop_converter.listener.ConversionListener;
+import de.drop_converter.listener.OutputListener;
+import de.drop_converter.management.ConversionEngineMXBean;
+import de.drop_converter.management.PluginMetrics;
+import de.drop_converter.plugin.ConverterPlugin;
+import de.drop_converter.plugin.StreamingConverterPlugin;
+import de.drop_converter.plugin.exception.ConverterException;
+
+/**
+ * Perform conversion jobs on a bounded pool of worker threads. The results will be delivered through a callback
+ * executor, so the GUI can handle them on the EDT. Plugins that implement <code>StreamingConverterPlugin</code> will get
+ * the data item by item instead of the whole <code>TransferSupport</code>.
+ *
+ * @author Thomas Chojecki
+ */
+public class ConversionEngine implements ConversionEngineMXBean
+{
+  private static final Logger LOG = Logger.getLogger(ConversionEngine.class.getName());
+
+  /**
+   * Callback executor that deliver the results on the Event Dispatch Thread.
+   */
+  public static final Executor EDT_EXECUTOR = new Executor()
+  {
+    @Override
+    public void execute(Runnable command)
+    {
+      SwingUtilities.invokeLater(command);
+    }
+  };
+
+  /**
+   * Callback executor that deliver the results directly on the worker thread.
+   */
+  public static final Executor DIRECT_EXECUTOR = new Executor()
+  {
+    @Override
+    public void execute(Runnable command)
+    {
+      command.run();
+    }
+  };
+
+  private final ThreadPoolExecutor executor;
+
+  // converts the files of a drop in parallel for plugins that are thread-safe
+  private final ForkJoinPool splitPool;
+
+  // keeps the outputs of cacheable plugins if set
+  private volatile ResultCache resultCache;
+
+  // skips the unchanged files of dropped directories if set
+  private volatile ManifestStore manifestStore;
+
+  // is notified about the outputs of the streaming plugins if set
+  private volatile OutputListener outputListener;
+
+  private final Executor callbackExecutor;
+
+  private final int queueSize;
+
+  private final AtomicLong rejectedJobs = new AtomicLong();
+
+  /**
+   * Create a new engine.
+   *
+   * @param threads is the maximum number of conversions that run at the same time.
+   * @param queueSize is the maximum number of jobs that wait for a free worker.
+   * @param callbackExecutor is used to deliver the results to the <code>ConversionListener</code>.
+   */
+  public ConversionEngine(int threads, int queueSize, Executor callbackExecutor)
+  {
+    if (threads < 1 || queueSize < 1)
+    {
+      throw new IllegalArgumentException("Threads and queue size need to be greater than zero");
+    }
+    this.callbackExecutor = callbackExecutor;
+    this.queueSize = queueSize;
+    executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new WorkerThreadFactory());
+    // idle workers should not keep the application alive
+    executor.allowCoreThreadTimeOut(true);
+    splitPool = new ForkJoinPool(threads, new SplitThreadFactory(), null, false);
+  }
+
+  /**
+   * Reuse the outputs of cacheable streaming plugins if the same content is dropped again.
+   *
+   * @param resultCache is the cache of the outputs or null to always convert.
+   */
+  public void setResultCache(ResultCache resultCache)
+  {
+    this.resultCache = resultCache;
+  }
+
+  /**
+   * Convert only the new and modified files if a drop contains directories. The converted files are remembered per
+   * plugin.
+   *
+   * @param manifestStore holds the converted files or null to convert all files of a drop.
+   */
+  public void setManifestStore(ManifestStore manifestStore)
+  {
+    this.manifestStore = manifestStore;
+  }
+
+  /**
+   * Report the files the streaming plugins write, e.g. so a watched directory can skip them.
+   *
+   * @param outputListener will be notified on the conversion threads or null.
+   */
+  public void setOutputListener(OutputListener outputListener)
+  {
+    this.outputListener = outputListener;
+  }
+
+  /**
+   * @return the store of the converted files or null if all files of a drop are converted.
+   */
+  public ManifestStore getManifestStore()
+  {
+    return manifestStore;
+  }
+
+  /**
+   * Queue the job for conversion.
+   *
+   * @param job is the job that should be converted.
+   * @param listener will be notified about the result. May be null.
+   * @return false if the engine is busy or shut down and the job was rejected.
+   */
+  public boolean submit(final ConversionJob job, final ConversionListener listener)
+  {
+    // queued jobs count as running, so the plugin will not be unloaded before they are converted
+    job.getPlugin().conversionStarted();
+    try
+    {
+      executor.execute(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          convert(job, listener);
+        }
+      });
+      return true;
+    }
+    catch (RejectedExecutionException e)
+    {
+      job.getPlugin().conversionFinished();
+      job.getProgress().finish();
+      rejectedJobs.incrementAndGet();
+      LOG.warning("Conversion rejected, engine is busy or shut down: " + job);
+      return false;
+    }
+  }
+
+  /**
+   * Queue several jobs for the same drop, e.g. one per plugin. The jobs run in parallel as far as workers are free.
+   * Rejected jobs are recorded in the report right away.
+   *
+   * @param jobs are the jobs that should be converted, at most one per plugin.
+   * @param report collects the results of the jobs.
+   * @return the number of jobs that were queued.
+   */
+  public int submitAll(List<ConversionJob> jobs, ConversionReport report)
+  {
+    int submitted = 0;
+    for (ConversionJob job : jobs)
+    {
+      if (submit(job, report))
+      {
+        submitted++;
+      }
+      else
+      {
+        report.skipped(job.getPlugin(), ConversionReport.Outcome.REJECTED);
+      }
+    }
+    return submitted;
+  }
+
+  private void convert(final ConversionJob job, final ConversionListener listener)
+  {
+    PluginMetrics metrics = job.getPlugin().getMetrics();
+    long start = System.nanoTime();
+    boolean recorded = false;
+    ConversionEvent event = new ConversionEvent();
+    event.begin();
+    String outcome = ConversionEvent.FAILED;
+    ConversionProgress progress = job.getProgress();
+    // the listener is called exactly once, even if the plugin throws an Error
+    boolean notified = false;
+    boolean locked = false;
+    try
+    {
+      // a plugin that is not thread-safe gets one job after another, e.g. of two quick drops or of a batch
+      lockConversion(job.getPlugin());
+      locked = true;
+
+      final boolean result;
+      ConverterPlugin plugin = job.getPlugin().getPlugin();
+      ForkJoinPool pool = job.getPlugin().isThreadSafe() ? splitPool : null;
+      List<File> files = getFiles(job.getData());
+      ManifestStore manifests = manifestStore;
+      if (progress.isCancelled())
+      {
+        result = false;
+      }
+      else if (manifests != null && files != null && containsDirectory(files))
+      {
+        Manifest.Delta delta = manifests.getManifest(job.getPlugin()).delta(files, splitPool);
+        result = convertChanged(plugin, job, delta, pool);
+      }
+      else if (plugin instanceof StreamingConverterPlugin)
+      {
+        result = StreamingConversion.convert((StreamingConverterPlugin) plugin, job.getData(), progress, pool, getCacheScope(job), outputListener);
+      }
+      else if (pool != null && files != null && files.size() > 1)
+      {
+        result = convertFiles(plugin, job, files, pool);
+      }
+      else
+      {
+        result = plugin.importData(job.createTransferSupport());
+      }
+      if (progress.isCancelled())
+      {
+        LOG.fine("Conversion cancelled after " + progress.getCompleted() + " of " + progress.getTotal() + " items: " + job);
+      }
+      metrics.recordConversion(System.nanoTime() - start, false);
+      recorded = true;
+      outcome = result ? ConversionEvent.CONVERTED : ConversionEvent.NOT_CONVERTED;
+      LOG.fine("Conversion finished in " + (System.currentTimeMillis() - job.getCreated()) + " ms: " + job);
+      notified = true;
+      if (listener != null)
+      {
+        callbackExecutor.execute(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            listener.conversionFinished(job, result);
+          }
+        });
+      }
+    }
+    catch (ConverterException | RuntimeException e)
+    {
+      if (!recorded)
+      {
+        metrics.recordConversion(System.nanoTime() - start, true);
+      }
+      LOG.log(Level.FINE, "Conversion failed: " + job, e);
+      if (!notified)
+      {
+        notified = true;
+        notifyFailed(job, listener, e instanceof ConverterException ? (ConverterException) e : new ConverterException(e));
+      }
+    }
+    finally
+    {
+      if (locked)
+      {
+        job.getPlugin().unlockConversion();
+      }
+      progress.finish();
+      event.end();
+      if (event.shouldCommit())
+      {
+        event.setPlugin(job.getPlugin());
+        event.flavors = Payloads.flavors(job.getData().getTransferDataFlavors());
+        event.payloadSize = Payloads.size(job.getData());
+        event.outcome = outcome;
+        event.commit();
+      }
+      job.getPlugin().conversionFinished();
+      if (!notified)
+      {
+        metrics.recordConversion(System.nanoTime() - start, true);
+        notifyFailed(job, listener, new ConverterException("The conversion was aborted by an error"));
+      }
+    }
+  }
+
+  private static void lockConversion(PluginWrapper plugin) throws ConverterException
+  {
+    try
+    {
+      plugin.lockConversion();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new ConverterException("Interrupted while waiting for plugin " + plugin.getPluginName(), e);
+    }
+  }
+
+  private void notifyFailed(final ConversionJob job, final ConversionListener listener, final ConverterException e)
+  {
+    if (listener != null)
+    {
+      callbackExecutor.execute(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          listener.conversionFailed(job, e);
+        }
+      });
+    }
+  }
+
+  /**
+   * Convert only the new and modified files of a drop with directories and remember them in the manifest of the
+   * plugin.
+   */
+  private boolean convertChanged(ConverterPlugin plugin, ConversionJob job, Manifest.Delta delta, ForkJoinPool pool) throws ConverterException
+  {
+    List<File> files = delta.getFiles();
+    LOG.info(files.size() + " of " + delta.getTotal() + " files changed since the last conversion: " + job);
+    if (files.isEmpty())
+    {
+      delta.save();
+      return true;
+    }
+
+    try
+    {
+      if (plugin instanceof StreamingConverterPlugin)
+      {
+        SplitConversion.FileConverter converter = StreamingConversion.fileConverter((StreamingConverterPlugin) plugin, getCacheScope(job), delta,
+            outputListener);
+        return SplitConversion.convert(files, converter, job.getProgress(), pool);
+      }
+      if (pool != null && files.size() > 1)
+      {
+        return SplitConversion.convert(files, delta.recording(fileConverter(plugin, job)), job.getProgress(), pool);
+      }
+
+      Transferable data = new SnapshotTransferable(DataFlavor.javaFileListFlavor, files);
+      boolean result = plugin.importData(new TransferSupport(job.getComponent(), data));
+      if (result)
+      {
+        delta.convertedAll();
+      }
+      return result;
+    }
+    finally
+    {
+      delta.save();
+    }
+  }
+
+  /**
+   * Hand each file as a separate drop to a thread-safe plugin.
+   */
+  private static boolean convertFiles(ConverterPlugin plugin, ConversionJob job, List<File> files, ForkJoinPool pool) throws ConverterException
+  {
+    return SplitConversion.convert(files, fileConverter(plugin, job), job.getProgress(), pool);
+  }
+
+  private static SplitConversion.FileConverter fileConverter(final ConverterPlugin plugin, final ConversionJob job)
+  {
+    return new SplitConversion.FileConverter()
+    {
+      @Override
+      public boolean convert(File file) throws ConverterException
+      {
+        Transferable data = new SnapshotTransferable(DataFlavor.javaFileListFlavor, Collections.singletonList(file));
+        return plugin.importData(new TransferSupport(job.getComponent(), data));
+      }
+    };
+  }
+
+  /**
+   * @return the part of the result cache of the plugin or null if its outputs are not cached.
+   */
+  private ResultCache.Scope getCacheScope(ConversionJob job)
+  {
+    ResultCache cache = resultCache;
+    return cache != null ? cache.getScope(job.getPlugin()) : null;
+  }
+
+  private static boolean containsDirectory(List<File> files)
+  {
+    for (File file : files)
+    {
+      if (file.isDirectory())
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the dropped files or null if the drop is not a file list.
+   */
+  @SuppressWarnings("unchecked")
+  private static List<File> getFiles(Transferable data)
+  {
+    if (data.isDataFlavorSupported(DataFlavor.javaFileListFlavor))
+    {
+      try
+      {
+        return (List<File>) data.getTransferData(DataFlavor.javaFileListFlavor);
+      }
+      catch (UnsupportedFlavorException | IOException e)
+      {
+        LOG.log(Level.FINE, "Could not read the dropped files.", e);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the number of jobs that wait for a free worker.
+   */
+  @Override
+  public int getQueuedJobs()
+  {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * @return the approximate number of jobs that are currently converted.
+   */
+  @Override
+  public int getActiveJobs()
+  {
+    return executor.getActiveCount();
+  }
+
+  /**
+   * @return the approximate number of jobs that were converted.
+   */
+  @Override
+  public long getCompletedJobs()
+  {
+    return executor.getCompletedTaskCount();
+  }
+
+  /**
+   * @return the number of jobs that were rejected because the engine was busy or shut down.
+   */
+  @Override
+  public long getRejectedJobs()
+  {
+    return rejectedJobs.get();
+  }
+
+  @Override
+  public int getThreads()
+  {
+    return executor.getMaximumPoolSize();
+  }
+
+  @Override
+  public int getQueueCapacity()
+  {
+    return queueSize;
+  }
+
+  /**
+   * Reject new jobs and wait for the running and queued ones.
+   *
+   * @param timeout is the maximum time to wait.
+   * @param unit is the unit of the timeout.
+   * @return true if all jobs finished in time.
+   */
+  public boolean shutdown(long timeout, TimeUnit unit)
+  {
+    executor.shutdown();
+    try
+    {
+      boolean terminated = executor.awaitTermination(timeout, unit);
+      splitPool.shutdown();
+      return terminated;
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Name the threads of the split pool like the worker threads.
+   */
+  private static class SplitThreadFactory implements ForkJoinWorkerThreadFactory
+  {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+    {
+      ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      thread.setName("conversion-split-" + count.incrementAndGet());
+      return thread;
+    }
+  }
+
+  /**
+   * Name the worker threads, so they can be found in thread dumps and log files.
+   */
+  private static class WorkerThreadFactory implements ThreadFactory
+  {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r)
+    {
+      return new Thread(r, "conversion-worker-" + count.incrementAndGet());
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import java.awt.Component;
+import java.awt.datatransfer.Transferable;
+
+import javax.swing.TransferHandler.TransferSupport;
+
+import de.drop_converter.PluginWrapper;
+
+/**
+ * A conversion request. It binds the captured drop data to the plugin that should perform the convert. Only the
+ * progress of the job changes after it was created.
+ *
+ * @author Thomas Chojecki
+ */
+public final class ConversionJob
+{
+  private final PluginWrapper plugin;
+
+  private final Component component;
+
+  private final Transferable data;
+
+  private final long created = System.currentTimeMillis();
+
+  private final ConversionProgress progress = new ConversionProgress();
+
+  /**
+   * @param plugin is the plugin that should convert the data.
+   * @param component is the component the data was dropped on.
+   * @param data is the captured data. It should not change after the job was created.
+   */
+  public ConversionJob(PluginWrapper plugin, Component component, Transferable data)
+  {
+    if (plugin == null || component == null || data == null)
+    {
+      throw new IllegalArgumentException("Plugin, component and data shall not be null");
+    }
+    this.plugin = plugin;
+    this.component = component;
+    this.data = data;
+  }
+
+  /**
+   * Capture the data of a running drop and create a job for it. Must be called while the drop is in progress.
+   *
+   * @param plugin is the plugin that should convert the data.
+   * @param support is the <code>TransferSupport</code> of the drop.
+   * @return a job that can be processed after the drop finished.
+   */
+  public static ConversionJob capture(PluginWrapper plugin, TransferSupport support)
+  {
+    return new ConversionJob(plugin, support.getComponent(), SnapshotTransferable.capture(support.getTransferable()));
+  }
+
+  public PluginWrapper getPlugin()
+  {
+    return plugin;
+  }
+
+  public Component getComponent()
+  {
+    return component;
+  }
+
+  public Transferable getData()
+  {
+    return data;
+  }
+
+  /**
+   * @return the time in milliseconds when this job was created.
+   */
+  public long getCreated()
+  {
+    return created;
+  }
+
+  /**
+   * @return the progress of the job, which can also be used to cancel it.
+   */
+  public ConversionProgress getProgress()
+  {
+    return progress;
+  }
+
+  /**
+   * Create a new <code>TransferSupport</code> for the captured data. It is not a drop support, so drop location and
+   * drop action are not available.
+   *
+   * @return a <code>TransferSupport</code> that can be handed to the plugin.
+   */
+  public TransferSupport createTransferSupport()
+  {
+    return new TransferSupport(component, data);
+  }
+
+  @Override
+  public String toString()
+  {
+    return "ConversionJob[" + plugin.getPluginName() + "]";
+  }
+}
@@ -0,0 +1,92 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The progress of a conversion job. A drop counts as one item until it is split into one item per file. The progress
+ * can be read from any thread, e.g. by a timer on the EDT.
+ *
+ * @author Thomas Chojecki
+ */
+public class ConversionProgress
+{
+  private volatile int total = 1;
+
+  private final AtomicInteger completed = new AtomicInteger();
+
+  private final AtomicInteger failed = new AtomicInteger();
+
+  private volatile boolean cancelled = false;
+
+  private volatile boolean done = false;
+
+  /**
+   * Set the number of items after the drop was split.
+   */
+  void setTotal(int total)
+  {
+    this.total = total;
+  }
+
+  /**
+   * Count a converted or failed item.
+   */
+  void itemFinished(boolean success)
+  {
+    if (!success)
+    {
+      failed.incrementAndGet();
+    }
+    completed.incrementAndGet();
+  }
+
+  /**
+   * Mark the job as finished, regardless if it was converted, failed or cancelled.
+   */
+  void finish()
+  {
+    done = true;
+  }
+
+  /**
+   * Ask the job to stop. Items that are already in progress will be finished, the others will be skipped.
+   */
+  public void cancel()
+  {
+    cancelled = true;
+  }
+
+  public boolean isCancelled()
+  {
+    return cancelled;
+  }
+
+  public boolean isDone()
+  {
+    return done;
+  }
+
+  /**
+   * @return the number of items, 1 if the drop was not split.
+   */
+  public int getTotal()
+  {
+    return total;
+  }
+
+  /**
+   * @return the number of finished items, including the failed ones.
+   */
+  public int getCompleted()
+  {
+    return completed.get();
+  }
+
+  public int getFailed()
+  {
+    return failed.get();
+  }
+}
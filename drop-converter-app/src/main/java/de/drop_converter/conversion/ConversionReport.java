@@ -0,0 +1,188 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.drop_converter.PluginWrapper;
+import de.drop_converter.listener.ConversionListener;
+import de.drop_converter.listener.ReportListener;
+import de.drop_converter.plugin.exception.ConverterException;
+
+/**
+ * The results of one drop that was handed to several plugins. The report collects the result of each plugin and
+ * notifies its <code>ReportListener</code> once the last plugin is done, on the thread that reported the last result.
+ *
+ * @author Thomas Chojecki
+ */
+public class ConversionReport implements ConversionListener
+{
+  public enum Outcome
+  {
+    CONVERTED, NOT_CONVERTED, FAILED, REJECTED, SKIPPED
+  }
+
+  private final Map<PluginWrapper, Entry> entries = new LinkedHashMap<>();
+
+  private final ReportListener listener;
+
+  private int pending;
+
+  /**
+   * @param plugins are the plugins the drop is handed to, in the order they should be reported.
+   * @param listener will be notified once all plugins are done. May be null.
+   */
+  public ConversionReport(List<PluginWrapper> plugins, ReportListener listener)
+  {
+    for (PluginWrapper plugin : plugins)
+    {
+      entries.put(plugin, null);
+    }
+    this.pending = entries.size();
+    this.listener = listener;
+  }
+
+  @Override
+  public void conversionFinished(ConversionJob job, boolean result)
+  {
+    record(job.getPlugin(), result ? Outcome.CONVERTED : Outcome.NOT_CONVERTED, null);
+  }
+
+  @Override
+  public void conversionFailed(ConversionJob job, ConverterException e)
+  {
+    record(job.getPlugin(), Outcome.FAILED, e);
+  }
+
+  /**
+   * Record a plugin that did not get the drop.
+   *
+   * @param plugin is the plugin that was skipped.
+   * @param outcome is the reason, {@link Outcome#REJECTED} or {@link Outcome#SKIPPED}.
+   */
+  public void skipped(PluginWrapper plugin, Outcome outcome)
+  {
+    record(plugin, outcome, null);
+  }
+
+  private void record(PluginWrapper plugin, Outcome outcome, ConverterException e)
+  {
+    synchronized (this)
+    {
+      if (!entries.containsKey(plugin) || entries.get(plugin) != null)
+      {
+        return;
+      }
+      entries.put(plugin, new Entry(plugin, outcome, e));
+      if (--pending > 0)
+      {
+        return;
+      }
+    }
+
+    if (listener != null)
+    {
+      listener.reportFinished(this);
+    }
+  }
+
+  /**
+   * @return true if the result of every plugin is known.
+   */
+  public synchronized boolean isFinished()
+  {
+    return pending == 0;
+  }
+
+  /**
+   * @return the known results in the order of the plugins.
+   */
+  public synchronized List<Entry> getEntries()
+  {
+    List<Entry> list = new ArrayList<>();
+    for (Entry entry : entries.values())
+    {
+      if (entry != null)
+      {
+        list.add(entry);
+      }
+    }
+    return Collections.unmodifiableList(list);
+  }
+
+  /**
+   * @return true if every plugin converted the drop.
+   */
+  public synchronized boolean isSuccessful()
+  {
+    for (Entry entry : entries.values())
+    {
+      if (entry == null || entry.getOutcome() != Outcome.CONVERTED)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return one line per plugin with its result.
+   */
+  @Override
+  public String toString()
+  {
+    StringBuilder sb = new StringBuilder();
+    for (Entry entry : getEntries())
+    {
+      sb.append(entry.getPlugin().getPluginName()).append(": ").append(entry.getOutcome().name().toLowerCase().replace('_', ' '));
+      if (entry.getException() != null)
+      {
+        sb.append(" - ").append(entry.getException().getMessage());
+      }
+      sb.append('\n');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * The result of a single plugin.
+   */
+  public static final class Entry
+  {
+    private final PluginWrapper plugin;
+
+    private final Outcome outcome;
+
+    private final ConverterException exception;
+
+    Entry(PluginWrapper plugin, Outcome outcome, ConverterException exception)
+    {
+      this.plugin = plugin;
+      this.outcome = outcome;
+      this.exception = exception;
+    }
+
+    public PluginWrapper getPlugin()
+    {
+      return plugin;
+    }
+
+    public Outcome getOutcome()
+    {
+      return outcome;
+    }
+
+    /**
+     * @return the error of a failed conversion, otherwise null.
+     */
+    public ConverterException getException()
+    {
+      return exception;
+    }
+  }
+}
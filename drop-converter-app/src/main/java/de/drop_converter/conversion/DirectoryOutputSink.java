@@ -0,0 +1,109 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.drop_converter.listener.OutputListener;
+import de.drop_converter.plugin.OutputSink;
+
+/**
+ * Write the outputs of a streaming plugin as files into a directory. All created channels will be closed on
+ * {@link #close()}.
+ *
+ * @author Thomas Chojecki
+ */
+public class DirectoryOutputSink implements OutputSink, Closeable
+{
+  private static final Logger LOG = Logger.getLogger(DirectoryOutputSink.class.getName());
+
+  private final File directory;
+
+  private final File protectedFile;
+
+  private final OutputListener listener;
+
+  private final List<WritableByteChannel> channels = new ArrayList<>();
+
+  private final List<File> files = new ArrayList<>();
+
+  /**
+   * @param directory is the directory where the outputs will be created.
+   * @param protectedFile is a file that shall not be overwritten, e.g. the input file. May be null.
+   */
+  public DirectoryOutputSink(File directory, File protectedFile)
+  {
+    this(directory, protectedFile, null);
+  }
+
+  /**
+   * @param directory is the directory where the outputs will be created.
+   * @param protectedFile is a file that shall not be overwritten, e.g. the input file. May be null.
+   * @param listener will be notified about each output before it is created. May be null.
+   */
+  public DirectoryOutputSink(File directory, File protectedFile, OutputListener listener)
+  {
+    this.directory = directory;
+    this.protectedFile = protectedFile;
+    this.listener = listener;
+  }
+
+  @Override
+  public synchronized WritableByteChannel create(String name) throws IOException
+  {
+    File target = new File(directory, name);
+    // the plugin shall not write outside of the directory
+    if (!target.getCanonicalFile().getParentFile().equals(directory.getCanonicalFile()))
+    {
+      throw new IOException("Invalid output name: " + name);
+    }
+    if (protectedFile != null && target.getCanonicalFile().equals(protectedFile.getCanonicalFile()))
+    {
+      throw new IOException("Output would overwrite the input: " + name);
+    }
+
+    if (listener != null)
+    {
+      listener.outputCreated(target);
+    }
+    FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    channels.add(channel);
+    files.add(target);
+    return channel;
+  }
+
+  /**
+   * @return the files of the created outputs.
+   */
+  public synchronized List<File> getFiles()
+  {
+    return new ArrayList<>(files);
+  }
+
+  @Override
+  public synchronized void close()
+  {
+    for (WritableByteChannel channel : channels)
+    {
+      try
+      {
+        channel.close();
+      }
+      catch (IOException e)
+      {
+        LOG.log(Level.WARNING, "Could not close output in " + directory, e);
+      }
+    }
+    channels.clear();
+  }
+}
@@ -0,0 +1,71 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+import de.drop_converter.plugin.DropItem;
+import de.drop_converter.plugin.MappedContent;
+
+/**
+ * A dropped file. The content will be read directly from the file system.
+ *
+ * @author Thomas Chojecki
+ */
+public class FileDropItem implements DropItem
+{
+  private final File file;
+
+  public FileDropItem(File file)
+  {
+    this.file = file;
+  }
+
+  public File getFile()
+  {
+    return file;
+  }
+
+  @Override
+  public String getName()
+  {
+    return file.getName();
+  }
+
+  @Override
+  public long getSize()
+  {
+    return file.length();
+  }
+
+  @Override
+  public ReadableByteChannel openChannel() throws IOException
+  {
+    return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+  }
+
+  @Override
+  public InputStream openStream() throws IOException
+  {
+    return Channels.newInputStream(openChannel());
+  }
+
+  @Override
+  public MappedContent map() throws IOException
+  {
+    return MappedFiles.map(file);
+  }
+
+  @Override
+  public String toString()
+  {
+    return file.getAbsolutePath();
+  }
+}
@@ -0,0 +1,69 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import de.drop_converter.plugin.StreamingConverterPlugin;
+
+/**
+ * SHA-256 helpers for the content hashes of the cache and the manifests.
+ *
+ * @author Thomas Chojecki
+ */
+final class Hashes
+{
+  private Hashes()
+  {}
+
+  static MessageDigest newDigest()
+  {
+    try
+    {
+      return MessageDigest.getInstance("SHA-256");
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      // every java platform supports SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @return the hash of the string as hex string.
+   */
+  static String hash(String value)
+  {
+    return toHex(newDigest().digest(value.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Add the remaining content of the channel to the digest. The channel will not be closed.
+   */
+  static void update(MessageDigest digest, ReadableByteChannel channel) throws IOException
+  {
+    ByteBuffer buffer = ByteBuffer.allocate(StreamingConverterPlugin.CHUNK_SIZE);
+    while (channel.read(buffer) != -1)
+    {
+      buffer.flip();
+      digest.update(buffer);
+      buffer.clear();
+    }
+  }
+
+  static String toHex(byte[] bytes)
+  {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes)
+    {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+}
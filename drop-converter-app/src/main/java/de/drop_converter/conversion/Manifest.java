@@ -0,0 +1,474 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.drop_converter.plugin.exception.ConverterException;
+
+/**
+ * The files a plugin converted, with their size, modification time and content hash. A file is unchanged if its size
+ * and modification time match. If only the modification time differs, the content hash decides, so touched files are
+ * not converted again.
+ *
+ * @author Thomas Chojecki
+ */
+final class Manifest
+{
+  private static final Logger LOG = Logger.getLogger(Manifest.class.getName());
+
+  // paths are absolute, so the key can not collide with a file
+  private static final String KEY_VERSION = "@version";
+
+  // the hash of outputs, which are only compared by size and modification time
+  private static final String NO_HASH = "-";
+
+  // number of files a task checks without splitting, a check is mostly a map lookup
+  private static final int CHECK_BATCH_SIZE = 64;
+
+  private final File file;
+
+  private final String version;
+
+  private final Map<String, Record> records;
+
+  private volatile boolean dirty = false;
+
+  private Manifest(File file, String version, Map<String, Record> records)
+  {
+    this.file = file;
+    this.version = version;
+    this.records = records;
+  }
+
+  /**
+   * Read the manifest from the file. A missing or unreadable file or a file of another plugin version gives an empty
+   * manifest.
+   */
+  static Manifest load(File file, String version)
+  {
+    Map<String, Record> records = new ConcurrentHashMap<>();
+    if (file.isFile())
+    {
+      Properties props = new Properties();
+      try (InputStream in = new FileInputStream(file))
+      {
+        props.load(in);
+      }
+      catch (IOException e)
+      {
+        LOG.log(Level.WARNING, "Could not read the manifest " + file + ", all files will be converted.", e);
+      }
+
+      if (version.equals(props.getProperty(KEY_VERSION)))
+      {
+        for (String path : props.stringPropertyNames())
+        {
+          Record record = Record.parse(props.getProperty(path));
+          if (record != null)
+          {
+            records.put(path, record);
+          }
+        }
+      }
+      else
+      {
+        LOG.info("The manifest " + file + " belongs to another plugin version, all files will be converted.");
+      }
+    }
+    return new Manifest(file, version, records);
+  }
+
+  String getVersion()
+  {
+    return version;
+  }
+
+  /**
+   * Find the new and modified files of the drop. Dropped directories are replaced with the files they contain. The
+   * files are checked in parallel on the pool. Files of the dropped directories that were deleted since the last
+   * conversion will be removed from the manifest.
+   *
+   * @param dropped are the dropped files and directories.
+   * @param pool checks the files in parallel.
+   * @return the files that need to be converted.
+   * @throws ConverterException if a dropped directory could not be read.
+   */
+  Delta delta(List<File> dropped, ForkJoinPool pool) throws ConverterException
+  {
+    final List<Candidate> candidates = new ArrayList<>();
+    final Set<String> seen = new HashSet<>();
+    List<String> roots = new ArrayList<>();
+    try
+    {
+      for (File root : dropped)
+      {
+        if (root.isDirectory())
+        {
+          roots.add(root.getAbsolutePath() + File.separator);
+        }
+        Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>()
+        {
+          @Override
+          public FileVisitResult visitFile(Path path, BasicFileAttributes attrs)
+          {
+            if (attrs.isRegularFile())
+            {
+              File file = path.toFile().getAbsoluteFile();
+              if (seen.add(file.getPath()))
+              {
+                candidates.add(new Candidate(file, attrs.size(), attrs.lastModifiedTime().toMillis()));
+              }
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path path, IOException e)
+          {
+            LOG.log(Level.FINE, "Could not read " + path + ", it will not be converted.", e);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+      }
+    }
+    catch (IOException e)
+    {
+      throw new ConverterException("Could not read the dropped directories", e);
+    }
+
+    for (String path : records.keySet())
+    {
+      for (String root : roots)
+      {
+        if (path.startsWith(root) && !seen.contains(path))
+        {
+          records.remove(path);
+          dirty = true;
+          break;
+        }
+      }
+    }
+
+    pool.invoke(new CheckTask(candidates, 0, candidates.size()));
+
+    List<File> files = new ArrayList<>();
+    Map<File, Record> changed = new HashMap<>();
+    for (Candidate candidate : candidates)
+    {
+      if (!candidate.unchanged)
+      {
+        files.add(candidate.file);
+        if (candidate.record != null)
+        {
+          changed.put(candidate.file, candidate.record);
+        }
+      }
+    }
+    return new Delta(files, changed, candidates.size());
+  }
+
+  /**
+   * Compare the file with the manifest. The hash of a new or modified file is calculated before it is converted, so a
+   * change during the conversion will be found on the next drop.
+   */
+  private void check(Candidate candidate)
+  {
+    String path = candidate.file.getPath();
+    Record old = records.get(path);
+    if (old != null && old.size == candidate.size && old.modified == candidate.modified)
+    {
+      candidate.unchanged = true;
+      return;
+    }
+
+    try
+    {
+      MessageDigest digest = Hashes.newDigest();
+      try (FileChannel channel = FileChannel.open(candidate.file.toPath(), StandardOpenOption.READ))
+      {
+        Hashes.update(digest, channel);
+      }
+      candidate.record = new Record(candidate.size, candidate.modified, Hashes.toHex(digest.digest()));
+    }
+    catch (IOException e)
+    {
+      // the plugin will report the error if it can not read the file either
+      LOG.log(Level.FINE, "Could not hash " + path, e);
+      return;
+    }
+
+    if (old != null && old.size == candidate.size && old.hash.equals(candidate.record.hash))
+    {
+      // only touched, remember the new modification time
+      candidate.unchanged = true;
+      records.put(path, candidate.record);
+      dirty = true;
+    }
+  }
+
+  /**
+   * Write the manifest if it changed. The file is replaced atomically, so a crash keeps the previous manifest.
+   */
+  synchronized void save()
+  {
+    if (!dirty)
+    {
+      return;
+    }
+    // cleared before the records are copied, so a change during the write keeps the manifest dirty
+    dirty = false;
+
+    Properties props = new Properties();
+    props.setProperty(KEY_VERSION, version);
+    for (Map.Entry<String, Record> entry : records.entrySet())
+    {
+      props.setProperty(entry.getKey(), entry.getValue().toString());
+    }
+    try
+    {
+      Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+      File temp = new File(file.getPath() + ".tmp");
+      try (OutputStream out = new FileOutputStream(temp))
+      {
+        props.store(out, "Files converted by the plugin");
+      }
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException e)
+    {
+      // try again on the next save
+      dirty = true;
+      LOG.log(Level.WARNING, "Could not write the manifest " + file, e);
+    }
+  }
+
+  /**
+   * The new and modified files of a drop. Converted files need to be reported, so they will be skipped next time.
+   */
+  final class Delta
+  {
+    private final List<File> files;
+
+    private final Map<File, Record> changed;
+
+    private final int total;
+
+    private Delta(List<File> files, Map<File, Record> changed, int total)
+    {
+      this.files = Collections.unmodifiableList(files);
+      this.changed = changed;
+      this.total = total;
+    }
+
+    /**
+     * @return the files that need to be converted.
+     */
+    List<File> getFiles()
+    {
+      return files;
+    }
+
+    /**
+     * @return the number of files in the drop.
+     */
+    int getTotal()
+    {
+      return total;
+    }
+
+    /**
+     * Remember the file as converted.
+     */
+    void converted(File file)
+    {
+      Record record = changed.get(file);
+      if (record != null)
+      {
+        records.put(file.getPath(), record);
+        dirty = true;
+      }
+    }
+
+    /**
+     * Remember the outputs a plugin wrote into the dropped directories, so they are not converted on the next drop.
+     */
+    void produced(List<File> outputs)
+    {
+      for (File output : outputs)
+      {
+        File absolute = output.getAbsoluteFile();
+        records.put(absolute.getPath(), new Record(absolute.length(), absolute.lastModified(), NO_HASH));
+        dirty = true;
+      }
+    }
+
+    /**
+     * Remember all files of the delta as converted.
+     */
+    void convertedAll()
+    {
+      for (File file : files)
+      {
+        converted(file);
+      }
+    }
+
+    /**
+     * @return a converter that remembers each file the given converter converted.
+     */
+    SplitConversion.FileConverter recording(final SplitConversion.FileConverter converter)
+    {
+      return new SplitConversion.FileConverter()
+      {
+        @Override
+        public boolean convert(File file) throws ConverterException
+        {
+          boolean result = converter.convert(file);
+          if (result)
+          {
+            converted(file);
+          }
+          return result;
+        }
+      };
+    }
+
+    /**
+     * Write the manifest with the converted files.
+     */
+    void save()
+    {
+      Manifest.this.save();
+    }
+  }
+
+  /**
+   * The state of a converted file.
+   */
+  private static final class Record
+  {
+    final long size;
+
+    final long modified;
+
+    final String hash;
+
+    Record(long size, long modified, String hash)
+    {
+      this.size = size;
+      this.modified = modified;
+      this.hash = hash;
+    }
+
+    static Record parse(String value)
+    {
+      String[] parts = value.split(",");
+      if (parts.length == 3)
+      {
+        try
+        {
+          return new Record(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]);
+        }
+        catch (NumberFormatException e)
+        {
+          // skip the broken record
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public String toString()
+    {
+      return size + "," + modified + "," + hash;
+    }
+  }
+
+  /**
+   * A file of the drop. Written by a single check task and read after the pool finished.
+   */
+  private static final class Candidate
+  {
+    final File file;
+
+    final long size;
+
+    final long modified;
+
+    boolean unchanged = false;
+
+    Record record;
+
+    Candidate(File file, long size, long modified)
+    {
+      this.file = file;
+      this.size = size;
+      this.modified = modified;
+    }
+  }
+
+  /**
+   * Checks the candidates from <code>start</code> inclusive to <code>end</code> exclusive.
+   */
+  private class CheckTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = 4181763519842947012L;
+
+    private final List<Candidate> candidates;
+
+    private final int start;
+
+    private final int end;
+
+    CheckTask(List<Candidate> candidates, int start, int end)
+    {
+      this.candidates = candidates;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute()
+    {
+      if (end - start <= CHECK_BATCH_SIZE)
+      {
+        for (int i = start; i < end; i++)
+        {
+          check(candidates.get(i));
+        }
+        return;
+      }
+      int middle = (start + end) >>> 1;
+      invokeAll(new CheckTask(candidates, start, middle), new CheckTask(candidates, middle, end));
+    }
+  }
+}
@@ -0,0 +1,51 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.drop_converter.PluginWrapper;
+
+/**
+ * Holds the manifests of the converted files, one per plugin. A manifest is read from its file when the plugin
+ * converts a directory for the first time.
+ *
+ * @author Thomas Chojecki
+ */
+public class ManifestStore
+{
+  private final File directory;
+
+  // the manifests by plugin class name, guarded by this
+  private final Map<String, Manifest> manifests = new HashMap<>();
+
+  /**
+   * @param directory is the directory of the manifest files, it will be created if needed.
+   */
+  public ManifestStore(File directory)
+  {
+    this.directory = directory;
+  }
+
+  /**
+   * Return the manifest of the plugin. A manifest of another version of the plugin will be discarded, so the new
+   * version converts all files again.
+   *
+   * @param plugin is the plugin that converts the files.
+   * @return the manifest of the plugin.
+   */
+  synchronized Manifest getManifest(PluginWrapper plugin)
+  {
+    Manifest manifest = manifests.get(plugin.getPluginClassName());
+    if (manifest == null || !manifest.getVersion().equals(plugin.getPluginVersion()))
+    {
+      File file = new File(directory, Hashes.hash(plugin.getPluginClassName()).substring(0, 32) + ".properties");
+      manifest = Manifest.load(file, plugin.getPluginVersion());
+      manifests.put(plugin.getPluginClassName(), manifest);
+    }
+    return manifest;
+  }
+}
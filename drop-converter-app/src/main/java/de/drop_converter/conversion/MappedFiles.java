@@ -0,0 +1,178 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import de.drop_converter.plugin.MappedContent;
+
+/**
+ * Map dropped files read-only into memory. Plugins that read the same file at the same time share the mapping. The
+ * mapping is reference counted and released if the last view was closed.
+ *
+ * @author Thomas Chojecki
+ */
+public final class MappedFiles
+{
+  private static final Logger LOG = Logger.getLogger(MappedFiles.class.getName());
+
+  /**
+   * Size of a single mapped chunk. A <code>ByteBuffer</code> can not address more than 2 GB.
+   */
+  public static final int CHUNK_SIZE = 1 << 30;
+
+  private static final Map<Key, Mapping> MAPPINGS = new HashMap<>();
+
+  private MappedFiles()
+  {}
+
+  /**
+   * Map the file or share an existing mapping of the same file.
+   *
+   * @param file is the file that should be mapped.
+   * @return a read-only view that need to be closed after usage.
+   * @throws IOException if the file could not be mapped.
+   */
+  public static MappedContent map(File file) throws IOException
+  {
+    String path = file.getCanonicalPath();
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+    {
+      // the key and the chunks use the same size, so a growing file can not be shared with a shorter mapping
+      long size = channel.size();
+      final Key key = new Key(path, size, file.lastModified());
+      Mapping mapping = acquire(key, null);
+      if (mapping == null)
+      {
+        // mapping takes a while for large files, so other files should not wait for it
+        mapping = acquire(key, new Mapping(mapChunks(channel, size)));
+      }
+
+      final Mapping acquired = mapping;
+      return new ChunkedContent(mapping.chunks, CHUNK_SIZE, size, new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          release(key, acquired);
+        }
+      });
+    }
+  }
+
+  /**
+   * Take a reference of the shared mapping of the key. If there is none, the created mapping will be shared.
+   *
+   * @param created is the new mapping of the file or null to only look up an existing one.
+   * @return the shared mapping or null if there is none and none was created.
+   */
+  private static Mapping acquire(Key key, Mapping created)
+  {
+    synchronized (MAPPINGS)
+    {
+      Mapping mapping = MAPPINGS.get(key);
+      if (mapping == null)
+      {
+        if (created == null)
+        {
+          return null;
+        }
+        // another thread may have mapped the file in the meantime, then its mapping is used
+        mapping = created;
+        MAPPINGS.put(key, mapping);
+      }
+      mapping.references++;
+      return mapping;
+    }
+  }
+
+  /**
+   * @return the number of files that are currently mapped.
+   */
+  public static int getMappedFiles()
+  {
+    synchronized (MAPPINGS)
+    {
+      return MAPPINGS.size();
+    }
+  }
+
+  private static void release(Key key, Mapping mapping)
+  {
+    synchronized (MAPPINGS)
+    {
+      if (--mapping.references == 0)
+      {
+        // the memory will be unmapped if the buffers are garbage collected
+        MAPPINGS.remove(key);
+        LOG.finer("Released mapping of " + key.path);
+      }
+    }
+  }
+
+  private static ByteBuffer[] mapChunks(FileChannel channel, long size) throws IOException
+  {
+    int count = (int) Math.max(1, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    ByteBuffer[] chunks = new ByteBuffer[count];
+    for (int i = 0; i < count; i++)
+    {
+      long position = (long) i * CHUNK_SIZE;
+      chunks[i] = channel.map(MapMode.READ_ONLY, position, Math.min(CHUNK_SIZE, size - position));
+    }
+    return chunks;
+  }
+
+  /**
+   * A mapping is only shared while the file did not change.
+   */
+  private static final class Key
+  {
+    private final String path;
+    private final long size;
+    private final long modified;
+
+    Key(String path, long size, long modified)
+    {
+      this.path = path;
+      this.size = size;
+      this.modified = modified;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return path.hashCode() * 31 + (int) (size ^ modified);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+      if (!(obj instanceof Key))
+      {
+        return false;
+      }
+      Key other = (Key) obj;
+      return path.equals(other.path) && size == other.size && modified == other.modified;
+    }
+  }
+
+  private static final class Mapping
+  {
+    private final ByteBuffer[] chunks;
+    private int references;
+
+    Mapping(ByteBuffer[] chunks)
+    {
+      this.chunks = chunks;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import de.drop_converter.plugin.DropItem;
+import de.drop_converter.plugin.MappedContent;
+
+/**
+ * An output of the previous pipeline stage that is read while it is written. The content can only be read once and its
+ * size is unknown.
+ *
+ * @author Thomas Chojecki
+ */
+class PipeDropItem implements DropItem
+{
+  private final String name;
+
+  private final StagePipe pipe;
+
+  private boolean opened = false;
+
+  /**
+   * @param name is the name the previous stage gave the output.
+   * @param pipe is the pipe the previous stage writes into.
+   */
+  PipeDropItem(String name, StagePipe pipe)
+  {
+    this.name = name;
+    this.pipe = pipe;
+  }
+
+  @Override
+  public String getName()
+  {
+    return name;
+  }
+
+  @Override
+  public long getSize()
+  {
+    return -1;
+  }
+
+  @Override
+  public synchronized ReadableByteChannel openChannel() throws IOException
+  {
+    if (opened)
+    {
+      throw new IOException("The output of the previous stage can only be read once: " + name);
+    }
+    opened = true;
+    return pipe.source();
+  }
+
+  @Override
+  public InputStream openStream() throws IOException
+  {
+    return Channels.newInputStream(openChannel());
+  }
+
+  /**
+   * A pipe can not be mapped, so the content is read into the heap.
+   */
+  @Override
+  public MappedContent map() throws IOException
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (InputStream in = openStream())
+    {
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1)
+      {
+        out.write(buffer, 0, read);
+      }
+    }
+    return new BytesDropItem(name, out.toByteArray()).map();
+  }
+
+  @Override
+  public String toString()
+  {
+    return name;
+  }
+}
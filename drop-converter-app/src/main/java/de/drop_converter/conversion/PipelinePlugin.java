@@ -0,0 +1,490 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.JPanel;
+import javax.swing.TransferHandler.TransferSupport;
+
+import de.drop_converter.PluginDescriptor;
+import de.drop_converter.PluginHandler;
+import de.drop_converter.PluginWrapper;
+import de.drop_converter.plugin.ConverterPlugin;
+import de.drop_converter.plugin.DropItem;
+import de.drop_converter.plugin.OutputSink;
+import de.drop_converter.plugin.StreamingConverterPlugin;
+import de.drop_converter.plugin.exception.ConverterException;
+import de.drop_converter.plugin.exception.InitializationException;
+
+/**
+ * A chain of streaming plugins that is shown as a single plugin. Each output of a stage becomes an item of the next
+ * stage. The stages are connected through bounded pipes and run concurrently, so the data flows through all stages
+ * without being stored in between. The outputs of the last stage are written to the sink of the drop.
+ * <p>
+ * A stage writes its outputs one after the other, creating an output closes the previous one. The runs of a stage
+ * that is not thread-safe wait for each other. A conversion locks all stages that are not thread-safe before it starts,
+ * so other pipelines and drops that use the same plugins wait for it. A stage that is not thread-safe can be used only
+ * once per pipeline.
+ * </p>
+ * <p>
+ * The stages are looked up by name on each use, so a stage that is reloaded from the plugin directory will be picked
+ * up by the pipeline.
+ * </p>
+ *
+ * @author Thomas Chojecki
+ */
+public class PipelinePlugin implements ConverterPlugin, StreamingConverterPlugin
+{
+  private static final Logger LOG = Logger.getLogger(PipelinePlugin.class.getName());
+
+  /**
+   * The prefix of the class names of the pipelines, so they can be told apart from real plugins.
+   */
+  public static final String CLASS_NAME_PREFIX = "pipeline:";
+
+  // the stages are locked in this order, so two pipelines that share stages can not wait for each other
+  private static final Comparator<PluginWrapper> LOCK_ORDER = new Comparator<PluginWrapper>()
+  {
+    @Override
+    public int compare(PluginWrapper o1, PluginWrapper o2)
+    {
+      int result = o1.compareTo(o2);
+      return result != 0 ? result : Integer.compare(System.identityHashCode(o1), System.identityHashCode(o2));
+    }
+  };
+
+  // the stages after the first one wait most of the time for the previous stage, so they don't use conversion workers
+  private static final ExecutorService STAGE_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory()
+  {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r)
+    {
+      Thread thread = new Thread(r, "pipeline-stage-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  private final PluginHandler handler;
+
+  private final String name;
+
+  private final List<String> stageNames;
+
+  private final int bufferSize;
+
+  /**
+   * @param handler is the handler that holds the stage plugins.
+   * @param name is the name of the pipeline.
+   * @param stageNames are the names or class names of the stage plugins in the order the data flows through them.
+   * @param bufferSize is the size of the pipes between the stages in bytes.
+   */
+  public PipelinePlugin(PluginHandler handler, String name, List<String> stageNames, int bufferSize)
+  {
+    if (stageNames.isEmpty())
+    {
+      throw new IllegalArgumentException("A pipeline needs at least one stage");
+    }
+    this.handler = handler;
+    this.name = name;
+    this.stageNames = Collections.unmodifiableList(new ArrayList<>(stageNames));
+    this.bufferSize = bufferSize;
+  }
+
+  /**
+   * @return the details of the pipeline that will be shown in the plugin chooser.
+   */
+  public PluginDescriptor getDescriptor()
+  {
+    StringBuilder description = new StringBuilder();
+    for (String stageName : stageNames)
+    {
+      if (description.length() > 0)
+      {
+        description.append(" > ");
+      }
+      description.append(stageName);
+    }
+    return new PluginDescriptor(CLASS_NAME_PREFIX + name, "", "", name, description.toString(), "", "", Collections.<String> emptyList(), false, false);
+  }
+
+  /**
+   * The stages are initialized by the <code>PluginHandler</code> like every other plugin.
+   */
+  @Override
+  public void initPlugin()
+  {}
+
+  @Override
+  public void destroyPlugin()
+  {}
+
+  @Override
+  public void enablePlugin() throws InitializationException
+  {
+    for (PluginWrapper stage : getStages())
+    {
+      stage.enablePlugin();
+    }
+  }
+
+  @Override
+  public void disablePlugin() throws InitializationException
+  {
+    for (String stageName : stageNames)
+    {
+      PluginWrapper stage = handler.findPlugin(stageName);
+      if (stage != null && stage.isPluginEnabled())
+      {
+        stage.disablePlugin();
+      }
+    }
+  }
+
+  /**
+   * The pipeline can import everything its first stage can import.
+   */
+  @Override
+  public boolean canImport(TransferSupport support)
+  {
+    PluginWrapper first = handler.findPlugin(stageNames.get(0));
+    return first != null && !isPipeline(first) && first.canImport(support);
+  }
+
+  @Override
+  public boolean importData(TransferSupport support) throws ConverterException
+  {
+    return StreamingConversion.convert(this, support.getTransferable());
+  }
+
+  @Override
+  public JPanel getConfigPanel()
+  {
+    return null;
+  }
+
+  @Override
+  public boolean convert(DropItem item, OutputSink sink) throws ConverterException
+  {
+    List<PluginWrapper> stages;
+    try
+    {
+      stages = getStages();
+    }
+    catch (InitializationException e)
+    {
+      throw new ConverterException(e.getMessage(), e);
+    }
+
+    // running conversions keep the stages from being unloaded
+    List<Stage> chain = new ArrayList<>();
+    List<PluginWrapper> locked = new ArrayList<>();
+    for (PluginWrapper stage : stages)
+    {
+      stage.conversionStarted();
+    }
+    try
+    {
+      for (PluginWrapper stage : stages)
+      {
+        if (!stage.isPluginEnabled())
+        {
+          // the stage was reloaded since the pipeline was enabled
+          stage.enablePlugin();
+        }
+        chain.add(new Stage((StreamingConverterPlugin) stage.getPlugin(), stage.isThreadSafe()));
+      }
+      lockStages(stages, locked);
+      return runStage(chain, 0, item, sink);
+    }
+    catch (InitializationException | IllegalStateException e)
+    {
+      throw new ConverterException(e.getMessage(), e);
+    }
+    finally
+    {
+      for (PluginWrapper stage : locked)
+      {
+        stage.unlockConversion();
+      }
+      for (PluginWrapper stage : stages)
+      {
+        stage.conversionFinished();
+      }
+    }
+  }
+
+  /**
+   * Lock the stages that are not thread-safe for this conversion. The stages run on other threads, so they can not
+   * lock themselves without blocking each other through the pipes.
+   *
+   * @param locked receives the locked stages, which must be unlocked by the caller.
+   */
+  private void lockStages(List<PluginWrapper> stages, List<PluginWrapper> locked) throws ConverterException
+  {
+    List<PluginWrapper> order = new ArrayList<>(stages);
+    Collections.sort(order, LOCK_ORDER);
+    for (PluginWrapper stage : order)
+    {
+      try
+      {
+        stage.lockConversion();
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        throw new ConverterException("Interrupted while waiting for stage " + stage.getPluginName() + " of pipeline " + name, e);
+      }
+      locked.add(stage);
+    }
+  }
+
+  /**
+   * Run a stage on the current thread and the following stages for each of its outputs on the stage threads.
+   *
+   * @return true if the stage and all following stages converted their items.
+   */
+  private boolean runStage(List<Stage> chain, int index, DropItem item, OutputSink sink) throws ConverterException
+  {
+    Stage stage = chain.get(index);
+    if (index == chain.size() - 1)
+    {
+      return stage.convert(item, sink);
+    }
+
+    StageSink next = new StageSink(chain, index + 1, sink);
+    boolean result = false;
+    ConverterException failure = null;
+    try
+    {
+      result = stage.convert(item, next);
+    }
+    catch (ConverterException | RuntimeException e)
+    {
+      failure = e instanceof ConverterException ? (ConverterException) e : new ConverterException(e);
+      next.fail(failure);
+    }
+    finally
+    {
+      // signal the end of the data to the next stages
+      next.close();
+    }
+
+    // a failed next stage is the cause if this stage could not write into the pipe anymore
+    boolean nextResult = next.await();
+    if (failure != null)
+    {
+      throw failure;
+    }
+    return result && nextResult;
+  }
+
+  /**
+   * @return the stage plugins in the order of the pipeline.
+   * @throws InitializationException if a stage is missing or can not be part of a pipeline.
+   */
+  private List<PluginWrapper> getStages() throws InitializationException
+  {
+    List<PluginWrapper> stages = new ArrayList<>();
+    for (String stageName : stageNames)
+    {
+      PluginWrapper stage = handler.findPlugin(stageName);
+      if (stage == null)
+      {
+        throw new InitializationException("Stage " + stageName + " of pipeline " + name + " is not installed");
+      }
+      if (isPipeline(stage))
+      {
+        throw new InitializationException("Stage " + stageName + " of pipeline " + name + " is a pipeline itself");
+      }
+      if (!(stage.getPlugin() instanceof StreamingConverterPlugin))
+      {
+        throw new InitializationException("Stage " + stageName + " of pipeline " + name + " is not a streaming plugin");
+      }
+      if (!stage.isThreadSafe() && stages.contains(stage))
+      {
+        // the second use would wait for the first one, which waits for the second one through the pipe
+        throw new InitializationException("Stage " + stageName + " of pipeline " + name + " is not thread-safe and can be used only once");
+      }
+      stages.add(stage);
+    }
+    return stages;
+  }
+
+  private static boolean isPipeline(PluginWrapper plugin)
+  {
+    return plugin.getPluginClassName().startsWith(CLASS_NAME_PREFIX);
+  }
+
+  @Override
+  public String toString()
+  {
+    return name;
+  }
+
+  /**
+   * A stage plugin of a running conversion. The runs of a stage that is not thread-safe wait for each other. Other
+   * conversions are kept away by the lock the conversion holds on the stage.
+   */
+  private static class Stage
+  {
+    private final StreamingConverterPlugin plugin;
+
+    private final boolean threadSafe;
+
+    Stage(StreamingConverterPlugin plugin, boolean threadSafe)
+    {
+      this.plugin = plugin;
+      this.threadSafe = threadSafe;
+    }
+
+    boolean convert(DropItem item, OutputSink sink) throws ConverterException
+    {
+      if (threadSafe)
+      {
+        return plugin.convert(item, sink);
+      }
+      synchronized (this)
+      {
+        return plugin.convert(item, sink);
+      }
+    }
+  }
+
+  /**
+   * The sink of a stage. Each created output is a pipe into a new run of the next stage. Creating an output closes the
+   * previous one, so a run of the next stage that waits for an earlier run can not block the whole pipeline.
+   */
+  private class StageSink implements OutputSink
+  {
+    private final List<Stage> chain;
+
+    private final int index;
+
+    private final OutputSink sink;
+
+    // the pipe of the last created output, the only one that is still written
+    private StagePipe current;
+
+    private final List<Future<Boolean>> runs = new ArrayList<>();
+
+    StageSink(List<Stage> chain, int index, OutputSink sink)
+    {
+      this.chain = chain;
+      this.index = index;
+      this.sink = sink;
+    }
+
+    @Override
+    public synchronized WritableByteChannel create(final String name) throws IOException
+    {
+      if (current != null)
+      {
+        // the data of the previous output is complete
+        current.closeSink();
+      }
+      final StagePipe pipe = new StagePipe(bufferSize);
+      current = pipe;
+      runs.add(STAGE_EXECUTOR.submit(new Callable<Boolean>()
+      {
+        @Override
+        public Boolean call() throws ConverterException
+        {
+          try
+          {
+            return runStage(chain, index, new PipeDropItem(name, pipe), sink);
+          }
+          finally
+          {
+            // a stage that stops reading early shall not block the previous stage
+            pipe.closeSource();
+          }
+        }
+      }));
+      return pipe.sink();
+    }
+
+    synchronized void fail(ConverterException cause)
+    {
+      if (current != null)
+      {
+        current.fail(cause);
+      }
+    }
+
+    synchronized void close()
+    {
+      if (current != null)
+      {
+        current.closeSink();
+      }
+    }
+
+    /**
+     * Wait for all runs of the next stage.
+     *
+     * @return true if all runs converted their items.
+     * @throws ConverterException with the error of the first failed run.
+     */
+    boolean await() throws ConverterException
+    {
+      List<Future<Boolean>> list;
+      synchronized (this)
+      {
+        list = new ArrayList<>(runs);
+      }
+
+      boolean result = true;
+      ConverterException failure = null;
+      for (Future<Boolean> run : list)
+      {
+        try
+        {
+          result &= run.get();
+        }
+        catch (ExecutionException e)
+        {
+          if (failure == null)
+          {
+            Throwable cause = e.getCause();
+            failure = cause instanceof ConverterException ? (ConverterException) cause : new ConverterException(cause);
+          }
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+          for (Future<Boolean> r : list)
+          {
+            r.cancel(true);
+          }
+          throw new ConverterException("Interrupted while waiting for the pipeline " + name);
+        }
+      }
+
+      if (failure != null)
+      {
+        LOG.log(Level.FINE, "Stage " + index + " of pipeline " + name + " failed", failure);
+        throw failure;
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,624 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.drop_converter.PluginWrapper;
+import de.drop_converter.plugin.DropItem;
+import de.drop_converter.plugin.OutputSink;
+import de.drop_converter.plugin.StreamingConverterPlugin;
+import de.drop_converter.plugin.exception.ConverterException;
+
+/**
+ * Keeps the outputs of cacheable streaming plugins on disk, so a drop with the same content is not converted again. An
+ * entry is found by the SHA-256 hash of the plugin class, the plugin version, the name and the content of the dropped
+ * item. Each plugin has its own directory, which is cleared if the plugin version changes. If the cache grows beyond
+ * its size limit, the least recently used entries are deleted.
+ * <p>
+ * The cache directory is read on first use, so it does not slow down the start of the converter.
+ * </p>
+ *
+ * @author Thomas Chojecki
+ */
+public class ResultCache
+{
+  private static final Logger LOG = Logger.getLogger(ResultCache.class.getName());
+
+  /**
+   * The default size limit of the cache in bytes.
+   */
+  public static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+
+  private static final String OUTPUTS_FILE = "outputs.properties";
+  private static final String VERSION_FILE = "version";
+  private static final String STAGING_DIR = "tmp";
+
+  private final File directory;
+
+  private final File stagingDirectory;
+
+  private final long maxSize;
+
+  // the entries with their size in the order of their last use, the eldest is evicted first. Guarded by this.
+  private final LinkedHashMap<File, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  // the scopes by plugin class name. Guarded by this.
+  private final Map<String, Scope> scopes = new HashMap<>();
+
+  private long size = 0;
+
+  private boolean loaded = false;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * @param directory is the directory of the cache, it will be created if needed.
+   * @param maxSize is the size limit of the cache in bytes.
+   */
+  public ResultCache(File directory, long maxSize)
+  {
+    if (maxSize < 1)
+    {
+      throw new IllegalArgumentException("The size limit shall be positive");
+    }
+    this.directory = directory;
+    this.stagingDirectory = new File(directory, STAGING_DIR);
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Return the part of the cache that belongs to the plugin. Entries of another version of the plugin will be deleted.
+   *
+   * @param plugin is the plugin that converts the drops.
+   * @return the scope of the plugin or null if the plugin is not cacheable or the cache is not usable.
+   */
+  synchronized Scope getScope(PluginWrapper plugin)
+  {
+    if (!plugin.isCacheable())
+    {
+      return null;
+    }
+    Scope scope = scopes.get(plugin.getPluginClassName());
+    if (scope != null && scope.version.equals(plugin.getPluginVersion()))
+    {
+      return scope;
+    }
+
+    load();
+    File pluginDirectory = new File(directory, Hashes.hash(plugin.getPluginClassName()).substring(0, 32));
+    File versionFile = new File(pluginDirectory, VERSION_FILE);
+    try
+    {
+      String version = versionFile.isFile() ? new String(Files.readAllBytes(versionFile.toPath()), StandardCharsets.UTF_8) : null;
+      if (!plugin.getPluginVersion().equals(version))
+      {
+        if (version != null)
+        {
+          LOG.info("Plugin " + plugin.getPluginName() + " changed from version " + version + " to " + plugin.getPluginVersion()
+              + ", dropping its cached outputs.");
+        }
+        for (Iterator<Map.Entry<File, Long>> it = entries.entrySet().iterator(); it.hasNext();)
+        {
+          Map.Entry<File, Long> entry = it.next();
+          if (entry.getKey().getParentFile().equals(pluginDirectory))
+          {
+            size -= entry.getValue();
+            it.remove();
+          }
+        }
+        delete(pluginDirectory);
+        Files.createDirectories(pluginDirectory.toPath());
+        Files.write(versionFile.toPath(), plugin.getPluginVersion().getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    catch (IOException e)
+    {
+      LOG.log(Level.WARNING, "Could not prepare the cache of plugin " + plugin.getPluginName() + ", its outputs will not be cached.", e);
+      return null;
+    }
+
+    scope = new Scope(plugin.getPluginClassName(), plugin.getPluginVersion(), pluginDirectory);
+    scopes.put(plugin.getPluginClassName(), scope);
+    return scope;
+  }
+
+  /**
+   * @return the size of all entries in bytes.
+   */
+  public synchronized long getSize()
+  {
+    return size;
+  }
+
+  /**
+   * @return the number of drops that were answered from the cache.
+   */
+  public long getHits()
+  {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of drops of cacheable plugins that were not found in the cache.
+   */
+  public long getMisses()
+  {
+    return misses.get();
+  }
+
+  /**
+   * Read the entries from the disk, the oldest modification time is the least recently used entry. Unfinished
+   * entries of a previous run will be deleted. Needs to be called while holding the lock of the cache.
+   */
+  private void load()
+  {
+    if (loaded)
+    {
+      return;
+    }
+    loaded = true;
+    delete(stagingDirectory);
+
+    List<File> found = new ArrayList<>();
+    File[] pluginDirectories = directory.listFiles();
+    if (pluginDirectories != null)
+    {
+      for (File pluginDirectory : pluginDirectories)
+      {
+        File[] candidates = pluginDirectory.listFiles();
+        if (candidates == null)
+        {
+          continue;
+        }
+        for (File candidate : candidates)
+        {
+          if (new File(candidate, OUTPUTS_FILE).isFile())
+          {
+            found.add(candidate);
+          }
+          else if (candidate.isDirectory())
+          {
+            delete(candidate);
+          }
+        }
+      }
+    }
+
+    Collections.sort(found, new Comparator<File>()
+    {
+      @Override
+      public int compare(File o1, File o2)
+      {
+        return Long.compare(o1.lastModified(), o2.lastModified());
+      }
+    });
+    for (File entry : found)
+    {
+      long entrySize = sizeOf(entry);
+      entries.put(entry, entrySize);
+      size += entrySize;
+    }
+    LOG.fine("Loaded " + entries.size() + " cached outputs with " + size + " bytes from " + directory);
+    evict();
+  }
+
+  /**
+   * Delete the least recently used entries until the cache fits into its size limit. Needs to be called while holding
+   * the lock of the cache.
+   */
+  private void evict()
+  {
+    for (Iterator<Map.Entry<File, Long>> it = entries.entrySet().iterator(); size > maxSize && it.hasNext();)
+    {
+      Map.Entry<File, Long> entry = it.next();
+      size -= entry.getValue();
+      it.remove();
+      delete(entry.getKey());
+      LOG.fine("Evicted cached outputs " + entry.getKey());
+    }
+  }
+
+  private static long sizeOf(File entry)
+  {
+    long result = 0;
+    File[] files = entry.listFiles();
+    if (files != null)
+    {
+      for (File file : files)
+      {
+        result += file.length();
+      }
+    }
+    return result;
+  }
+
+  private static void delete(File file)
+  {
+    File[] children = file.listFiles();
+    if (children != null)
+    {
+      for (File child : children)
+      {
+        delete(child);
+      }
+    }
+    if (file.exists() && !file.delete())
+    {
+      LOG.fine("Could not delete " + file);
+    }
+  }
+
+  /**
+   * The entries of one version of a plugin.
+   */
+  final class Scope
+  {
+    private final String className;
+
+    private final String version;
+
+    private final File pluginDirectory;
+
+    Scope(String className, String version, File pluginDirectory)
+    {
+      this.className = className;
+      this.version = version;
+      this.pluginDirectory = pluginDirectory;
+    }
+
+    /**
+     * Write the cached outputs of the item into the sink or convert the item and keep its outputs. Only successful
+     * conversions are kept. If the cache can not be read or written, the item will be converted as if there was no
+     * cache.
+     *
+     * @return true if the item was converted.
+     * @throws ConverterException if the plugin failed or a cached output could not be written.
+     */
+    boolean convert(StreamingConverterPlugin plugin, DropItem item, OutputSink sink) throws ConverterException
+    {
+      File entry;
+      try
+      {
+        entry = new File(pluginDirectory, hash(item));
+      }
+      catch (IOException e)
+      {
+        LOG.log(Level.FINE, "Could not hash " + item.getName() + ", converting it without the cache.", e);
+        return plugin.convert(item, sink);
+      }
+
+      if (replay(entry, sink))
+      {
+        hits.incrementAndGet();
+        LOG.fine("Used cached outputs for " + item.getName());
+        return true;
+      }
+      misses.incrementAndGet();
+
+      CachingSink cachingSink;
+      try
+      {
+        Files.createDirectories(stagingDirectory.toPath());
+        cachingSink = new CachingSink(sink, Files.createTempDirectory(stagingDirectory.toPath(), "entry").toFile());
+      }
+      catch (IOException e)
+      {
+        LOG.log(Level.FINE, "Could not create a cache entry, converting " + item.getName() + " without the cache.", e);
+        return plugin.convert(item, sink);
+      }
+
+      boolean result = false;
+      try
+      {
+        result = plugin.convert(item, cachingSink);
+        return result;
+      }
+      finally
+      {
+        cachingSink.close();
+        if (result && cachingSink.isComplete())
+        {
+          store(entry, cachingSink);
+        }
+        else
+        {
+          delete(cachingSink.directory);
+        }
+      }
+    }
+
+    /**
+     * @return the hash of the plugin, its version and the name and content of the item. The outputs are usually named
+     *         after the item, so the same content with another name must not replay them.
+     */
+    private String hash(DropItem item) throws IOException
+    {
+      MessageDigest digest = Hashes.newDigest();
+      digest.update(className.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      digest.update(version.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      digest.update(item.getName().getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      try (ReadableByteChannel channel = item.openChannel())
+      {
+        Hashes.update(digest, channel);
+      }
+      return Hashes.toHex(digest.digest());
+    }
+
+    /**
+     * Copy the cached outputs into the sink.
+     *
+     * @return false if the entry is not cached.
+     */
+    private boolean replay(File entry, OutputSink sink) throws ConverterException
+    {
+      Properties outputs = new Properties();
+      List<FileChannel> channels = new ArrayList<>();
+      synchronized (ResultCache.this)
+      {
+        // marks the entry as used, so it is evicted last
+        if (entries.get(entry) == null)
+        {
+          return false;
+        }
+        // the files are opened while holding the lock, so they can not be evicted in between
+        try (InputStream in = new FileInputStream(new File(entry, OUTPUTS_FILE)))
+        {
+          outputs.load(in);
+          for (int i = 0; i < outputs.size(); i++)
+          {
+            channels.add(FileChannel.open(new File(entry, String.valueOf(i)).toPath(), StandardOpenOption.READ));
+          }
+          entry.setLastModified(System.currentTimeMillis());
+        }
+        catch (IOException e)
+        {
+          LOG.log(Level.WARNING, "Dropping broken cache entry " + entry, e);
+          close(channels);
+          size -= entries.remove(entry);
+          delete(entry);
+          return false;
+        }
+      }
+
+      try
+      {
+        for (int i = 0; i < channels.size(); i++)
+        {
+          FileChannel in = channels.get(i);
+          try (WritableByteChannel out = sink.create(outputs.getProperty(String.valueOf(i))))
+          {
+            long position = 0;
+            long length = in.size();
+            while (position < length)
+            {
+              position += in.transferTo(position, length - position, out);
+            }
+          }
+        }
+        return true;
+      }
+      catch (IOException e)
+      {
+        throw new ConverterException("Could not write the cached outputs", e);
+      }
+      finally
+      {
+        close(channels);
+      }
+    }
+
+    /**
+     * Move the outputs into the cache and evict old entries if the cache is full.
+     */
+    private void store(File entry, CachingSink cachingSink)
+    {
+      try
+      {
+        cachingSink.writeNames();
+        long entrySize = sizeOf(cachingSink.directory);
+        synchronized (ResultCache.this)
+        {
+          if (entries.containsKey(entry) || scopes.get(className) != this)
+          {
+            // stored by a parallel conversion of the same content or the plugin version changed meanwhile
+            delete(cachingSink.directory);
+            return;
+          }
+          delete(entry);
+          Files.move(cachingSink.directory.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+          entries.put(entry, entrySize);
+          size += entrySize;
+          evict();
+        }
+      }
+      catch (IOException e)
+      {
+        LOG.log(Level.WARNING, "Could not store the outputs in the cache.", e);
+        delete(cachingSink.directory);
+      }
+    }
+  }
+
+  private static void close(List<FileChannel> channels)
+  {
+    for (FileChannel channel : channels)
+    {
+      try
+      {
+        channel.close();
+      }
+      catch (IOException e)
+      {
+        LOG.log(Level.FINE, "Could not close cached output", e);
+      }
+    }
+  }
+
+  /**
+   * Writes the outputs into the sink of the drop and a copy into a new cache entry.
+   */
+  private static class CachingSink implements OutputSink
+  {
+    private final OutputSink sink;
+
+    private final File directory;
+
+    // guarded by this
+    private final List<String> names = new ArrayList<>();
+    private final List<FileChannel> copies = new ArrayList<>();
+    private boolean complete = true;
+
+    CachingSink(OutputSink sink, File directory)
+    {
+      this.sink = sink;
+      this.directory = directory;
+    }
+
+    @Override
+    public synchronized WritableByteChannel create(String name) throws IOException
+    {
+      WritableByteChannel target = sink.create(name);
+      FileChannel copy = null;
+      try
+      {
+        copy = FileChannel.open(new File(directory, String.valueOf(names.size())).toPath(), StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.WRITE);
+        names.add(name);
+        copies.add(copy);
+      }
+      catch (IOException e)
+      {
+        failed(e);
+      }
+      return new TeeChannel(target, copy);
+    }
+
+    synchronized void failed(IOException e)
+    {
+      if (complete)
+      {
+        LOG.log(Level.FINE, "Could not copy an output into the cache.", e);
+        complete = false;
+      }
+    }
+
+    synchronized boolean isComplete()
+    {
+      return complete;
+    }
+
+    synchronized void close()
+    {
+      ResultCache.close(copies);
+    }
+
+    synchronized void writeNames() throws IOException
+    {
+      Properties outputs = new Properties();
+      for (int i = 0; i < names.size(); i++)
+      {
+        outputs.setProperty(String.valueOf(i), names.get(i));
+      }
+      try (OutputStream out = new FileOutputStream(new File(directory, OUTPUTS_FILE)))
+      {
+        outputs.store(out, null);
+      }
+    }
+
+    /**
+     * A channel that writes everything that reached the output into the copy as well.
+     */
+    private class TeeChannel implements WritableByteChannel
+    {
+      private final WritableByteChannel target;
+
+      private final FileChannel copy;
+
+      TeeChannel(WritableByteChannel target, FileChannel copy)
+      {
+        this.target = target;
+        this.copy = copy;
+      }
+
+      @Override
+      public int write(ByteBuffer src) throws IOException
+      {
+        int position = src.position();
+        int written = target.write(src);
+        if (copy != null && written > 0)
+        {
+          ByteBuffer copied = src.duplicate();
+          copied.limit(position + written);
+          copied.position(position);
+          try
+          {
+            while (copied.hasRemaining())
+            {
+              copy.write(copied);
+            }
+          }
+          catch (IOException e)
+          {
+            failed(e);
+          }
+        }
+        return written;
+      }
+
+      @Override
+      public boolean isOpen()
+      {
+        return target.isOpen();
+      }
+
+      @Override
+      public void close() throws IOException
+      {
+        try
+        {
+          target.close();
+        }
+        finally
+        {
+          if (copy != null)
+          {
+            copy.close();
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,261 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An immutable copy of a <code>Transferable</code>. A drag and drop <code>Transferable</code> is only valid while the
+ * drop is in progress, so the data of each offered <code>DataFlavor</code> is captured once and can then be handed to
+ * a plugin on any thread. The file list and other cheap flavors are copied at once. Stream based flavors are only
+ * buffered when a plugin asks for them, which usually happens on a worker thread and not on the EDT. They are then
+ * served as a fresh stream on each request. Buffers and arrays are served as a fresh view or copy, so a plugin that
+ * consumes them does not change the data of the others.
+ *
+ * @author Thomas Chojecki
+ */
+public class SnapshotTransferable implements Transferable
+{
+  private static final Logger LOG = Logger.getLogger(SnapshotTransferable.class.getName());
+
+  private final DataFlavor[] flavors;
+
+  private final Map<DataFlavor, Object> data;
+
+  /**
+   * Create a snapshot with the given flavor to data mapping.
+   *
+   * @param data is the data per flavor. The map will be copied.
+   */
+  public SnapshotTransferable(Map<DataFlavor, Object> data)
+  {
+    this.data = Collections.unmodifiableMap(new LinkedHashMap<>(data));
+    this.flavors = this.data.keySet().toArray(new DataFlavor[0]);
+  }
+
+  /**
+   * Create a snapshot that only offer a single flavor.
+   *
+   * @param flavor is the offered flavor.
+   * @param value is the data for the flavor.
+   */
+  public SnapshotTransferable(DataFlavor flavor, Object value)
+  {
+    this(Collections.singletonMap(flavor, value));
+  }
+
+  /**
+   * Capture all data from the given <code>Transferable</code>. Flavors that could not be read will be skipped. The
+   * streams of stream based flavors are kept and read on the first request.
+   *
+   * @param transferable is the source that should be captured.
+   * @return a new snapshot of the given <code>Transferable</code>.
+   */
+  public static SnapshotTransferable capture(Transferable transferable)
+  {
+    Map<DataFlavor, Object> data = new LinkedHashMap<>();
+    for (DataFlavor flavor : transferable.getTransferDataFlavors())
+    {
+      try
+      {
+        Object value = transferable.getTransferData(flavor);
+        if (value instanceof InputStream || value instanceof Reader)
+        {
+          // a drop offers the same text in many stream flavors, most of them are never read by a plugin
+          value = new StreamData(value);
+        }
+        else if (value instanceof List)
+        {
+          // the snapshot may be shared between plugins, so none of them should change the file list of the others
+          value = Collections.unmodifiableList(new ArrayList<>((List<?>) value));
+        }
+        else
+        {
+          // the source may reuse its buffers and arrays after the drop
+          value = snapshot(value);
+        }
+        data.put(flavor, value);
+      }
+      catch (UnsupportedFlavorException | IOException e)
+      {
+        LOG.log(Level.FINE, "Skipping flavor " + flavor.getMimeType() + " while capturing the drop.", e);
+      }
+    }
+    return new SnapshotTransferable(data);
+  }
+
+  @Override
+  public DataFlavor[] getTransferDataFlavors()
+  {
+    return flavors.clone();
+  }
+
+  @Override
+  public boolean isDataFlavorSupported(DataFlavor flavor)
+  {
+    return data.containsKey(flavor);
+  }
+
+  @Override
+  public Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException, IOException
+  {
+    if (!data.containsKey(flavor))
+    {
+      throw new UnsupportedFlavorException(flavor);
+    }
+
+    Object value = data.get(flavor);
+    if (value instanceof StreamData)
+    {
+      value = ((StreamData) value).get();
+    }
+    if (flavor.isRepresentationClassInputStream() && value instanceof byte[])
+    {
+      return new ByteArrayInputStream((byte[]) value);
+    }
+    if (flavor.isRepresentationClassReader() && value instanceof String)
+    {
+      return new StringReader((String) value);
+    }
+    return copy(value);
+  }
+
+  /**
+   * @return a private copy of the remaining content of a buffer or of an array, other values are returned as is.
+   */
+  private static Object snapshot(Object value)
+  {
+    if (value instanceof ByteBuffer)
+    {
+      ByteBuffer source = ((ByteBuffer) value).duplicate();
+      ByteBuffer buffer = ByteBuffer.allocate(source.remaining());
+      buffer.put(source).flip();
+      return buffer;
+    }
+    if (value instanceof CharBuffer)
+    {
+      CharBuffer source = ((CharBuffer) value).duplicate();
+      CharBuffer buffer = CharBuffer.allocate(source.remaining());
+      buffer.put(source).flip();
+      return buffer;
+    }
+    return copy(value);
+  }
+
+  /**
+   * @return a copy of a mutable array or a view with its own position of a buffer, other values are returned as is.
+   */
+  private static Object copy(Object value)
+  {
+    if (value instanceof ByteBuffer)
+    {
+      return ((ByteBuffer) value).asReadOnlyBuffer();
+    }
+    if (value instanceof CharBuffer)
+    {
+      return ((CharBuffer) value).asReadOnlyBuffer();
+    }
+    if (value instanceof byte[])
+    {
+      return ((byte[]) value).clone();
+    }
+    if (value instanceof char[])
+    {
+      return ((char[]) value).clone();
+    }
+    return value;
+  }
+
+  /**
+   * The stream of a stream based flavor, which is read on the first request. The streams of a drop are already
+   * buffered by AWT, so they stay readable after the drop.
+   */
+  private static class StreamData
+  {
+    private Object source;
+
+    private Object content;
+
+    private IOException failure;
+
+    StreamData(Object source)
+    {
+      this.source = source;
+    }
+
+    /**
+     * @return the content as <code>byte[]</code> for an <code>InputStream</code> or as <code>String</code> for a
+     *         <code>Reader</code>.
+     * @throws IOException if the stream could not be read. Later requests fail the same way.
+     */
+    synchronized Object get() throws IOException
+    {
+      if (source != null)
+      {
+        try
+        {
+          content = source instanceof InputStream ? readFully((InputStream) source) : readFully((Reader) source);
+        }
+        catch (IOException e)
+        {
+          failure = e;
+        }
+        source = null;
+      }
+      if (failure != null)
+      {
+        throw new IOException("Could not read the dropped data", failure);
+      }
+      return content;
+    }
+  }
+
+  private static byte[] readFully(InputStream in) throws IOException
+  {
+    try (InputStream is = in)
+    {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = is.read(buffer)) != -1)
+      {
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    }
+  }
+
+  private static String readFully(Reader in) throws IOException
+  {
+    try (Reader reader = in)
+    {
+      StringWriter out = new StringWriter();
+      char[] buffer = new char[4096];
+      int read;
+      while ((read = reader.read(buffer)) != -1)
+      {
+        out.write(buffer, 0, read);
+      }
+      return out.toString();
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.drop_converter.plugin.exception.ConverterException;
+
+/**
+ * Convert the files of a drop one by one. On a <code>ForkJoinPool</code> the file list is split in halves until each
+ * task holds a single file, so idle threads steal the remaining files from the busy ones. The progress is updated per
+ * file and a cancelled progress skips the files that are not started yet.
+ *
+ * @author Thomas Chojecki
+ */
+final class SplitConversion
+{
+  /**
+   * The conversion of a single file.
+   */
+  interface FileConverter
+  {
+    boolean convert(File file) throws ConverterException;
+  }
+
+  private final List<File> files;
+
+  private final FileConverter converter;
+
+  private final ConversionProgress progress;
+
+  private final AtomicBoolean converted = new AtomicBoolean();
+
+  private final AtomicReference<ConverterException> firstFailure = new AtomicReference<>();
+
+  private SplitConversion(List<File> files, FileConverter converter, ConversionProgress progress)
+  {
+    this.files = files;
+    this.converter = converter;
+    this.progress = progress;
+  }
+
+  /**
+   * Convert the files. A failed file does not stop the others.
+   *
+   * @param files are the files that should be converted.
+   * @param converter converts a single file.
+   * @param progress will be updated for each file.
+   * @param pool is the pool for a parallel conversion or null to convert the files one after another on the current
+   *          thread.
+   * @return true if at least one file was converted.
+   * @throws ConverterException with the error of the first failed file, after all other files are converted.
+   */
+  static boolean convert(List<File> files, FileConverter converter, ConversionProgress progress, ForkJoinPool pool) throws ConverterException
+  {
+    progress.setTotal(files.size());
+    SplitConversion conversion = new SplitConversion(files, converter, progress);
+    if (pool == null)
+    {
+      for (File file : files)
+      {
+        conversion.convert(file);
+      }
+    }
+    else
+    {
+      pool.invoke(conversion.new FileTask(0, files.size()));
+    }
+
+    ConverterException failure = conversion.firstFailure.get();
+    if (failure != null)
+    {
+      throw new ConverterException(progress.getFailed() + " of " + files.size() + " files failed. First error: " + failure.getMessage(), failure);
+    }
+    return conversion.converted.get();
+  }
+
+  private void convert(File file)
+  {
+    if (progress.isCancelled())
+    {
+      return;
+    }
+
+    boolean success = false;
+    try
+    {
+      if (converter.convert(file))
+      {
+        converted.set(true);
+      }
+      success = true;
+    }
+    catch (ConverterException | RuntimeException e)
+    {
+      firstFailure.compareAndSet(null, e instanceof ConverterException ? (ConverterException) e : new ConverterException(e));
+    }
+    finally
+    {
+      progress.itemFinished(success);
+    }
+  }
+
+  /**
+   * The files from <code>start</code> inclusive to <code>end</code> exclusive.
+   */
+  private class FileTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = -2739455136587231549L;
+
+    private final int start;
+
+    private final int end;
+
+    FileTask(int start, int end)
+    {
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute()
+    {
+      if (end - start == 1)
+      {
+        convert(files.get(start));
+        return;
+      }
+      if (end > start)
+      {
+        int middle = (start + end) >>> 1;
+        invokeAll(new FileTask(start, middle), new FileTask(middle, end));
+      }
+    }
+  }
+}
@@ -0,0 +1,209 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A bounded in-memory pipe between two threads. The writer blocks while the buffer is full and the reader blocks while
+ * it is empty, so a fast stage can not run away from a slow one. Closing the sink signals the end of the data, closing
+ * the source lets the writer fail instead of blocking forever.
+ *
+ * @author Thomas Chojecki
+ */
+public class StagePipe
+{
+  private final byte[] buffer;
+
+  // the position of the next byte to read and the number of buffered bytes, guarded by this
+  private int readPosition = 0;
+  private int count = 0;
+
+  private boolean sinkClosed = false;
+  private boolean sourceClosed = false;
+
+  private IOException failure;
+
+  private final WritableByteChannel sink = new WritableByteChannel()
+  {
+    @Override
+    public int write(ByteBuffer src) throws IOException
+    {
+      return StagePipe.this.write(src);
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+      synchronized (StagePipe.this)
+      {
+        return !sinkClosed;
+      }
+    }
+
+    @Override
+    public void close()
+    {
+      closeSink();
+    }
+  };
+
+  private final ReadableByteChannel source = new ReadableByteChannel()
+  {
+    @Override
+    public int read(ByteBuffer dst) throws IOException
+    {
+      return StagePipe.this.read(dst);
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+      synchronized (StagePipe.this)
+      {
+        return !sourceClosed;
+      }
+    }
+
+    @Override
+    public void close()
+    {
+      closeSource();
+    }
+  };
+
+  /**
+   * @param capacity is the maximum number of bytes the pipe buffers.
+   */
+  public StagePipe(int capacity)
+  {
+    if (capacity < 1)
+    {
+      throw new IllegalArgumentException("Capacity shall be positive");
+    }
+    buffer = new byte[capacity];
+  }
+
+  /**
+   * @return the channel of the writer.
+   */
+  public WritableByteChannel sink()
+  {
+    return sink;
+  }
+
+  /**
+   * @return the channel of the reader.
+   */
+  public ReadableByteChannel source()
+  {
+    return source;
+  }
+
+  /**
+   * Close the channel of the writer. The reader will see the end of the data once the buffered data is read.
+   */
+  public synchronized void closeSink()
+  {
+    sinkClosed = true;
+    notifyAll();
+  }
+
+  /**
+   * Close the channel of the reader. The writer will fail on the next write.
+   */
+  public synchronized void closeSource()
+  {
+    sourceClosed = true;
+    notifyAll();
+  }
+
+  /**
+   * Let the reader fail once the buffered data is read, instead of seeing a regular end of data.
+   *
+   * @param cause is the reason why the writer failed.
+   */
+  public synchronized void fail(Throwable cause)
+  {
+    if (failure == null)
+    {
+      failure = new IOException("The previous stage failed", cause);
+      notifyAll();
+    }
+  }
+
+  private synchronized int write(ByteBuffer src) throws IOException
+  {
+    int written = 0;
+    while (src.hasRemaining())
+    {
+      if (sinkClosed)
+      {
+        throw new ClosedChannelException();
+      }
+      if (sourceClosed)
+      {
+        throw new IOException("The next stage closed the pipe");
+      }
+      if (count == buffer.length)
+      {
+        await();
+        continue;
+      }
+
+      int writePosition = (readPosition + count) % buffer.length;
+      int length = Math.min(src.remaining(), Math.min(buffer.length - count, buffer.length - writePosition));
+      src.get(buffer, writePosition, length);
+      count += length;
+      written += length;
+      notifyAll();
+    }
+    return written;
+  }
+
+  private synchronized int read(ByteBuffer dst) throws IOException
+  {
+    if (sourceClosed)
+    {
+      throw new ClosedChannelException();
+    }
+    while (count == 0)
+    {
+      if (failure != null)
+      {
+        throw failure;
+      }
+      if (sinkClosed)
+      {
+        return -1;
+      }
+      await();
+    }
+
+    int length = Math.min(dst.remaining(), Math.min(count, buffer.length - readPosition));
+    dst.put(buffer, readPosition, length);
+    readPosition = (readPosition + length) % buffer.length;
+    count -= length;
+    notifyAll();
+    return length;
+  }
+
+  private void await() throws InterruptedIOException
+  {
+    try
+    {
+      wait();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the pipe");
+    }
+  }
+}
@@ -0,0 +1,190 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import static de.drop_converter.Converter.CONVERTER_OUTPUT_DIR;
+
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.drop_converter.listener.OutputListener;
+import de.drop_converter.plugin.DropItem;
+import de.drop_converter.plugin.StreamingConverterPlugin;
+import de.drop_converter.plugin.exception.ConverterException;
+
+/**
+ * Hand the captured drop data item by item to a <code>StreamingConverterPlugin</code>. Dropped files will be streamed
+ * from the file system and the outputs will be written next to them. Dropped text will be converted into a new
+ * directory per drop in the output directory of the converter.
+ *
+ * @author Thomas Chojecki
+ */
+public final class StreamingConversion
+{
+  private static final DateTimeFormatter DROP_DIRECTORY_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+  // tells apart the text drops of the same second
+  private static final AtomicInteger DROP_SEQUENCE = new AtomicInteger();
+
+  private StreamingConversion()
+  {}
+
+  /**
+   * Convert the data with the given plugin, one file after another.
+   *
+   * @param plugin is the plugin that should convert the data.
+   * @param data is the captured drop data.
+   * @return true if at least one item was converted.
+   * @throws ConverterException if the plugin failed or the data could not be read.
+   */
+  public static boolean convert(StreamingConverterPlugin plugin, Transferable data) throws ConverterException
+  {
+    return convert(plugin, data, new ConversionProgress(), null, null, null);
+  }
+
+  /**
+   * Convert the data with the given plugin. Each dropped file is a separate item of the progress.
+   *
+   * @param plugin is the plugin that should convert the data.
+   * @param data is the captured drop data.
+   * @param progress will be updated for each file.
+   * @param pool converts the files in parallel, null to convert them one after another.
+   * @param cache holds the outputs of former conversions of the plugin, null to always convert.
+   * @param listener will be notified about each output. May be null.
+   * @return true if at least one item was converted.
+   * @throws ConverterException if the plugin failed or the data could not be read.
+   */
+  @SuppressWarnings("unchecked")
+  static boolean convert(StreamingConverterPlugin plugin, Transferable data, ConversionProgress progress, ForkJoinPool pool,
+      ResultCache.Scope cache, OutputListener listener) throws ConverterException
+  {
+    try
+    {
+      if (data.isDataFlavorSupported(DataFlavor.javaFileListFlavor))
+      {
+        List<File> files = expand((List<File>) data.getTransferData(DataFlavor.javaFileListFlavor));
+        return SplitConversion.convert(files, fileConverter(plugin, cache, null, listener), progress, pool);
+      }
+      if (data.isDataFlavorSupported(DataFlavor.stringFlavor))
+      {
+        String text = (String) data.getTransferData(DataFlavor.stringFlavor);
+        // the item keeps its name, so the result cache finds the same text again
+        DropItem item = new BytesDropItem("drop.txt", text.getBytes(StandardCharsets.UTF_8));
+        return convert(plugin, item, new DirectoryOutputSink(createDropDirectory(), null, listener), cache);
+      }
+    }
+    catch (UnsupportedFlavorException | IOException e)
+    {
+      throw new ConverterException("Could not read the dropped data", e);
+    }
+    throw new ConverterException("Streaming plugins can only convert dropped files or text");
+  }
+
+  /**
+   * Return a converter that streams a file to the plugin and writes the outputs next to the file.
+   *
+   * @param delta remembers the converted files and their outputs, so the outputs are not taken as new files of the
+   *          directory on the next drop. May be null.
+   * @param listener will be notified about each output. May be null.
+   */
+  static SplitConversion.FileConverter fileConverter(final StreamingConverterPlugin plugin, final ResultCache.Scope cache, final Manifest.Delta delta,
+      final OutputListener listener)
+  {
+    return new SplitConversion.FileConverter()
+    {
+      @Override
+      public boolean convert(File file) throws ConverterException
+      {
+        DirectoryOutputSink sink = new DirectoryOutputSink(file.getAbsoluteFile().getParentFile(), file, listener);
+        boolean result = StreamingConversion.convert(plugin, new FileDropItem(file), sink, cache);
+        if (delta != null)
+        {
+          if (result)
+          {
+            delta.converted(file);
+          }
+          delta.produced(sink.getFiles());
+        }
+        return result;
+      }
+    };
+  }
+
+  private static boolean convert(StreamingConverterPlugin plugin, DropItem item, DirectoryOutputSink sink, ResultCache.Scope cache)
+      throws ConverterException
+  {
+    try
+    {
+      return cache != null ? cache.convert(plugin, item, sink) : plugin.convert(item, sink);
+    }
+    finally
+    {
+      sink.close();
+    }
+  }
+
+  /**
+   * Create a new directory for the outputs of a text drop, so concurrent drops and several plugins of the same drop do
+   * not overwrite each other.
+   */
+  private static File createDropDirectory() throws IOException
+  {
+    Files.createDirectories(CONVERTER_OUTPUT_DIR.toPath());
+    String prefix = "drop-" + LocalDateTime.now().format(DROP_DIRECTORY_FORMAT) + "-";
+    while (true)
+    {
+      File directory = new File(CONVERTER_OUTPUT_DIR, prefix + DROP_SEQUENCE.incrementAndGet());
+      try
+      {
+        Files.createDirectory(directory.toPath());
+        return directory;
+      }
+      catch (FileAlreadyExistsException e)
+      {
+        // e.g. created by another converter process
+      }
+    }
+  }
+
+  /**
+   * Replace the directories with the files they contain.
+   */
+  private static List<File> expand(List<File> files)
+  {
+    List<File> result = new ArrayList<>();
+    for (File file : files)
+    {
+      if (file.isDirectory())
+      {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+          List<File> list = new ArrayList<>();
+          for (File child : children)
+          {
+            list.add(child);
+          }
+          result.addAll(expand(list));
+        }
+      }
+      else
+      {
+        result.add(file);
+      }
+    }
+    return result;
+  }
+}
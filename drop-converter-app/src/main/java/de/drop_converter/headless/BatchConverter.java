@@ -0,0 +1,526 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.headless;
+
+import java.awt.Component;
+import java.awt.datatransfer.DataFlavor;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.JLabel;
+
+import de.drop_converter.Configuration;
+import de.drop_converter.Converter;
+import de.drop_converter.PluginHandler;
+import de.drop_converter.PluginIndex;
+import de.drop_converter.PluginWrapper;
+import de.drop_converter.conversion.ConversionEngine;
+import de.drop_converter.conversion.ConversionJob;
+import de.drop_converter.conversion.ResultCache;
+import de.drop_converter.conversion.SnapshotTransferable;
+import de.drop_converter.listener.ConversionListener;
+import de.drop_converter.listener.DirectoryListener;
+import de.drop_converter.listener.OutputListener;
+import de.drop_converter.management.Management;
+import de.drop_converter.plugin.exception.ConverterException;
+import de.drop_converter.plugin.exception.InitializationException;
+import de.drop_converter.watch.DirectoryWatcher;
+
+/**
+ * Convert files, directories or the standard input without a GUI. Each file will be handed to the plugin as a single
+ * <code>javaFileListFlavor</code> drop and the standard input as a <code>stringFlavor</code> drop. The drops will be
+ * converted in parallel. In watch mode, each new or changed file of a directory will be converted continuously.
+ *
+ * @author Thomas Chojecki
+ */
+public class BatchConverter
+{
+  private static final Logger LOG = Logger.getLogger(BatchConverter.class.getName());
+
+  public static final int EXIT_OK = 0;
+  public static final int EXIT_FAILED = 1;
+  public static final int EXIT_USAGE = 2;
+
+  private static final String USAGE = "Usage: java -jar Drop-Converter.jar --plugin <name> [--threads <n>] <file|directory|->...\n"
+      + "       java -jar Drop-Converter.jar --plugin <name> [--threads <n>] [--quiet-period <ms>] --watch <directory>\n"
+      + "  --plugin, -p        name or class name of the plugin that should convert the data\n"
+      + "  --threads, -t       number of parallel conversions (default: number of processors)\n"
+      + "  --watch, -w         convert each new or changed file of the directory until the converter is stopped\n"
+      + "  --quiet-period, -q  time a watched file should not change before it will be converted (default: 1000)\n"
+      + "  -                   read the data from the standard input";
+
+  private final PluginWrapper plugin;
+
+  // The TransferSupport need a component, a lightweight one can also be created in a headless environment.
+  private final Component component = new JLabel();
+
+  private final AtomicInteger succeeded = new AtomicInteger();
+  private final AtomicInteger failed = new AtomicInteger();
+  private final AtomicInteger skipped = new AtomicInteger();
+
+  // the bytes of the converted items only, skipped and failed items don't count
+  private final AtomicLong bytes = new AtomicLong();
+
+  // the size of the submitted items until their conversion ended
+  private final Map<ConversionJob, Long> sizes = new ConcurrentHashMap<>();
+
+  // the files the plugin wrote, so the watch mode does not convert its own outputs again
+  private final Set<Path> outputs = ConcurrentHashMap.newKeySet();
+
+  private final ConversionEngine engine;
+
+  // limit the pending jobs, so a large directory will not be hold in memory. A permit is released before the worker
+  // is free again, so only the queue is counted or a new job could find all workers busy and the queue full.
+  private final Semaphore pending;
+
+  private final ConversionListener listener = new ConversionListener()
+  {
+    @Override
+    public void conversionFinished(ConversionJob job, boolean result)
+    {
+      Long size = sizes.remove(job);
+      if (result && size != null)
+      {
+        bytes.addAndGet(size);
+      }
+      (result ? succeeded : failed).incrementAndGet();
+      pending.release();
+    }
+
+    @Override
+    public void conversionFailed(ConversionJob job, ConverterException e)
+    {
+      LOG.log(Level.SEVERE, "Conversion failed: " + job.getData(), e);
+      sizes.remove(job);
+      failed.incrementAndGet();
+      pending.release();
+    }
+  };
+
+  /**
+   * @param plugin is the plugin that should convert the data. It need to be initialized.
+   * @param threads is the number of parallel conversions.
+   */
+  public BatchConverter(PluginWrapper plugin, int threads)
+  {
+    this.plugin = plugin;
+    int queueSize = threads * 4;
+    engine = new ConversionEngine(threads, queueSize, ConversionEngine.DIRECT_EXECUTOR);
+    // e.g. for watching a long running watch mode with jconsole
+    Management.register(engine, Management.conversionEngineName());
+    pending = new Semaphore(queueSize);
+  }
+
+  /**
+   * Parse the command line, load the plugins and run the conversion.
+   *
+   * @param args are the command line arguments.
+   * @return the exit code.
+   */
+  public static int run(String[] args)
+  {
+    String pluginName = null;
+    int threads = Runtime.getRuntime().availableProcessors();
+    File watchDirectory = null;
+    long quietPeriod = 1000;
+    List<String> inputs = new ArrayList<>();
+
+    try
+    {
+      for (int i = 0; i < args.length; i++)
+      {
+        String arg = args[i];
+        if ("--plugin".equals(arg) || "-p".equals(arg))
+        {
+          pluginName = args[++i];
+        }
+        else if ("--threads".equals(arg) || "-t".equals(arg))
+        {
+          threads = Integer.parseInt(args[++i]);
+        }
+        else if ("--watch".equals(arg) || "-w".equals(arg))
+        {
+          watchDirectory = new File(args[++i]);
+        }
+        else if ("--quiet-period".equals(arg) || "-q".equals(arg))
+        {
+          quietPeriod = Long.parseLong(args[++i]);
+        }
+        else if ("--help".equals(arg) || "-h".equals(arg))
+        {
+          System.out.println(USAGE);
+          return EXIT_OK;
+        }
+        else
+        {
+          inputs.add(arg);
+        }
+      }
+    }
+    catch (ArrayIndexOutOfBoundsException | NumberFormatException e)
+    {
+      System.err.println(USAGE);
+      return EXIT_USAGE;
+    }
+
+    if (pluginName == null || (inputs.isEmpty() == (watchDirectory == null)) || threads < 1 || quietPeriod < 0)
+    {
+      System.err.println(USAGE);
+      return EXIT_USAGE;
+    }
+
+    PluginHandler pluginHandler = new PluginHandler();
+    // counted down once the plugins are destroyed, so a shutdown hook of the watch mode can wait for it
+    CountDownLatch cleanedUp = new CountDownLatch(1);
+    try
+    {
+      pluginHandler.loadPlugins(Converter.CONVERTER_PLUGIN_DIR, new PluginIndex(Converter.PLUGIN_INDEX_FILE));
+
+      Configuration config = readConfiguration();
+      if (config != null)
+      {
+        registerPipelines(pluginHandler, config);
+      }
+
+      PluginWrapper plugin = pluginHandler.findPlugin(pluginName);
+      if (plugin == null)
+      {
+        System.err.println("Plugin not found: " + pluginName);
+        System.err.println("Available plugins:");
+        for (PluginWrapper pluginWrapper : pluginHandler.getPlugins())
+        {
+          System.err.println("  " + pluginWrapper.getPluginName() + " (" + pluginWrapper.getPluginClassName() + ")");
+        }
+        return EXIT_USAGE;
+      }
+
+      plugin.initializePlugin();
+      plugin.enablePlugin();
+      try
+      {
+        BatchConverter batchConverter = new BatchConverter(plugin, threads);
+        long cacheSize = config != null ? config.getResultCacheSize() : ResultCache.DEFAULT_MAX_SIZE;
+        batchConverter.setResultCache(new ResultCache(Converter.CONVERTER_CACHE_DIR, cacheSize));
+        if (watchDirectory != null)
+        {
+          if (!watchDirectory.isDirectory())
+          {
+            System.err.println("Not a directory: " + watchDirectory);
+            return EXIT_USAGE;
+          }
+          return batchConverter.watch(watchDirectory, quietPeriod, cleanedUp);
+        }
+        return batchConverter.convert(inputs);
+      }
+      finally
+      {
+        plugin.disablePlugin();
+      }
+    }
+    catch (InitializationException e)
+    {
+      LOG.log(Level.SEVERE, "Plugin initialization failed.", e);
+      return EXIT_FAILED;
+    }
+    catch (IOException e)
+    {
+      LOG.log(Level.SEVERE, "Could not read the input.", e);
+      return EXIT_FAILED;
+    }
+    finally
+    {
+      pluginHandler.dispose();
+      cleanedUp.countDown();
+    }
+  }
+
+  /**
+   * @return the configuration of the converter or null if there is none, so the defaults should be used.
+   */
+  private static Configuration readConfiguration()
+  {
+    if (!Converter.CONFIGURATION_FILE.isFile())
+    {
+      return null;
+    }
+    try
+    {
+      return new Configuration(Converter.CONFIGURATION_FILE);
+    }
+    catch (IOException e)
+    {
+      LOG.log(Level.WARNING, "Could not read the configuration, using the defaults.", e);
+      return null;
+    }
+  }
+
+  /**
+   * Register the pipelines of the configuration, so they can be used like a plugin.
+   */
+  private static void registerPipelines(PluginHandler pluginHandler, Configuration config)
+  {
+    for (Map.Entry<String, List<String>> pipeline : config.getPipelines().entrySet())
+    {
+      pluginHandler.registerPipeline(pipeline.getKey(), pipeline.getValue(), config.getPipelineBufferSize());
+    }
+  }
+
+  /**
+   * Reuse the outputs of the plugin if it is cacheable and the same content is converted again.
+   *
+   * @param resultCache is the cache of the outputs or null to always convert.
+   */
+  public void setResultCache(ResultCache resultCache)
+  {
+    engine.setResultCache(resultCache);
+  }
+
+  /**
+   * Convert all given inputs and print a throughput summary.
+   *
+   * @param inputs are files, directories or "-" for the standard input.
+   * @return the exit code.
+   * @throws IOException if the standard input could not be read.
+   */
+  public int convert(List<String> inputs) throws IOException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      for (String input : inputs)
+      {
+        if ("-".equals(input))
+        {
+          byte[] stdin = readStandardInput();
+          String text = new String(stdin, Charset.defaultCharset());
+          submit(new SnapshotTransferable(DataFlavor.stringFlavor, text), stdin.length);
+        }
+        else
+        {
+          File file = new File(input);
+          if (!file.exists())
+          {
+            LOG.warning("Skipping missing input " + file.getAbsolutePath());
+            skipped.incrementAndGet();
+            continue;
+          }
+          submitFile(file);
+        }
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    finally
+    {
+      engine.shutdown(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      Management.unregister(Management.conversionEngineName());
+    }
+
+    printSummary(System.nanoTime() - start);
+    return failed.get() == 0 ? EXIT_OK : EXIT_FAILED;
+  }
+
+  /**
+   * Watch the directory and convert each new or changed file until the JVM shuts down. Existing files will be
+   * converted too. The outputs a streaming plugin writes into the directory will not be converted again.
+   *
+   * @param directory is the directory that should be watched.
+   * @param quietPeriod is the time in milliseconds a file should not change before it will be converted.
+   * @return the exit code.
+   * @throws IOException if the directory could not be watched.
+   */
+  public int watch(File directory, long quietPeriod) throws IOException
+  {
+    return watch(directory, quietPeriod, new CountDownLatch(0));
+  }
+
+  /**
+   * Watch the directory like {@link #watch(File, long)}. If the JVM shuts down, it waits for the running conversions
+   * and the cleanup of the caller before it halts.
+   *
+   * @param directory is the directory that should be watched.
+   * @param quietPeriod is the time in milliseconds a file should not change before it will be converted.
+   * @param cleanedUp will be counted down by the caller once the plugin is destroyed.
+   * @return the exit code.
+   * @throws IOException if the directory could not be watched.
+   */
+  public int watch(File directory, long quietPeriod, final CountDownLatch cleanedUp) throws IOException
+  {
+    long start = System.nanoTime();
+    final CountDownLatch stop = new CountDownLatch(1);
+    final CountDownLatch stopped = new CountDownLatch(1);
+    Thread shutdownHook = new Thread("watch-shutdown")
+    {
+      @Override
+      public void run()
+      {
+        stop.countDown();
+        try
+        {
+          // give the running conversions and the cleanup the chance to finish
+          long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+          if (stopped.await(30, TimeUnit.SECONDS))
+          {
+            cleanedUp.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          }
+        }
+        catch (InterruptedException e)
+        {
+          // shut down anyway
+        }
+      }
+    };
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+    engine.setOutputListener(new OutputListener()
+    {
+      @Override
+      public void outputCreated(File file)
+      {
+        outputs.add(file.toPath().toAbsolutePath().normalize());
+      }
+    });
+    try (DirectoryWatcher watcher = new DirectoryWatcher(directory.toPath(), quietPeriod, new DirectoryListener()
+    {
+      @Override
+      public void fileChanged(Path file)
+      {
+        if (isTemporary(file) || outputs.contains(file.toAbsolutePath().normalize()))
+        {
+          return;
+        }
+        try
+        {
+          submitFile(file.toFile());
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      @Override
+      public void fileDeleted(Path file)
+      {}
+    }))
+    {
+      LOG.info("Watching " + directory.getAbsolutePath() + " with plugin " + plugin.getPluginName());
+      watcher.start(true);
+      stop.await();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    finally
+    {
+      engine.shutdown(30, TimeUnit.SECONDS);
+      Management.unregister(Management.conversionEngineName());
+      printSummary(System.nanoTime() - start);
+      stopped.countDown();
+      try
+      {
+        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+      }
+      catch (IllegalStateException e)
+      {
+        // the JVM is shutting down, the hook waits for the cleanup
+      }
+    }
+    return failed.get() == 0 ? EXIT_OK : EXIT_FAILED;
+  }
+
+  /**
+   * Hidden files and files of download managers or editors are not complete and should not be converted.
+   */
+  private static boolean isTemporary(Path file)
+  {
+    String name = file.getFileName().toString();
+    return name.startsWith(".") || name.endsWith(".tmp") || name.endsWith(".part") || name.endsWith(".crdownload");
+  }
+
+  private void submitFile(File file) throws InterruptedException
+  {
+    if (file.isDirectory())
+    {
+      File[] children = file.listFiles();
+      if (children != null)
+      {
+        for (File child : children)
+        {
+          submitFile(child);
+        }
+      }
+    }
+    else
+    {
+      List<File> files = Collections.singletonList(file);
+      submit(new SnapshotTransferable(DataFlavor.javaFileListFlavor, files), file.length());
+    }
+  }
+
+  /**
+   * @param size is the size of the data in bytes, it is counted for the summary once the data was converted.
+   */
+  private void submit(SnapshotTransferable data, long size) throws InterruptedException
+  {
+    ConversionJob job = new ConversionJob(plugin, component, data);
+    if (!plugin.canImport(job.createTransferSupport()))
+    {
+      LOG.fine("Plugin can not import " + data);
+      skipped.incrementAndGet();
+      return;
+    }
+
+    pending.acquire();
+    sizes.put(job, size);
+    if (!engine.submit(job, listener))
+    {
+      sizes.remove(job);
+      pending.release();
+      failed.incrementAndGet();
+    }
+  }
+
+  private byte[] readStandardInput() throws IOException
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    InputStream in = System.in;
+    int read;
+    while ((read = in.read(buffer)) != -1)
+    {
+      out.write(buffer, 0, read);
+    }
+    return out.toByteArray();
+  }
+
+  private void printSummary(long nanos)
+  {
+    double seconds = nanos / 1e9;
+    int total = succeeded.get() + failed.get();
+    System.out.println(String.format(Locale.ROOT, "Converted %d of %d items with %s (%d failed, %d skipped) in %.2f s: %.1f items/s, %.2f MB/s", succeeded.get(),
+        total + skipped.get(), plugin.getPluginName(), failed.get(), skipped.get(), seconds, total / seconds, bytes.get() / seconds / (1024 * 1024)));
+  }
+}
@@ -0,0 +1,27 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The check of the drop area if the selected plugin can import a drag.
+ *
+ * @author Thomas Chojecki
+ */
+@Name("de.drop_converter.CanImport")
+@Label("Can Import")
+@Description("The drop area asked the selected plugin if it can import the dragged data")
+@Category({ "Drop Converter", "Drops" })
+public class CanImportEvent extends PluginEvent
+{
+  @Label("Flavors")
+  public String flavors;
+
+  @Label("Accepted")
+  public boolean accepted;
+}
@@ -0,0 +1,37 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A drop on the drop area. The conversion itself is recorded as {@link ConversionEvent}.
+ *
+ * @author Thomas Chojecki
+ */
+@Name("de.drop_converter.Drop")
+@Label("Drop")
+@Description("Data was dropped on the drop area and handed to the conversion engine")
+@Category({ "Drop Converter", "Drops" })
+public class DropEvent extends PluginEvent
+{
+  public static final String SUBMITTED = "submitted";
+  public static final String REJECTED = "rejected";
+  public static final String NO_PLUGIN = "no plugin";
+
+  @Label("Flavors")
+  public String flavors;
+
+  @Label("Payload Size")
+  @Description("The size of the dropped files or the UTF-8 size of the dropped text in bytes, 0 if unknown")
+  @DataAmount
+  public long payloadSize;
+
+  @Label("Outcome")
+  public String outcome;
+}
@@ -0,0 +1,100 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.jfr;
+
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Describe the dropped data for the events. The methods may touch the file system, so they should only be called if
+ * the event will be committed.
+ *
+ * @author Thomas Chojecki
+ */
+public final class Payloads
+{
+  private Payloads()
+  {}
+
+  /**
+   * @return the MIME types of the flavors, separated by comma.
+   */
+  public static String flavors(DataFlavor[] flavors)
+  {
+    StringBuilder sb = new StringBuilder();
+    for (DataFlavor flavor : flavors)
+    {
+      if (sb.length() > 0)
+      {
+        sb.append(", ");
+      }
+      sb.append(flavor.getPrimaryType()).append('/').append(flavor.getSubType());
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return the size of the dropped files or the UTF-8 size of dropped text in bytes, 0 if unknown.
+   */
+  @SuppressWarnings("unchecked")
+  public static long size(Transferable transferable)
+  {
+    try
+    {
+      if (transferable.isDataFlavorSupported(DataFlavor.javaFileListFlavor))
+      {
+        long size = 0;
+        for (File file : (List<File>) transferable.getTransferData(DataFlavor.javaFileListFlavor))
+        {
+          size += file.length();
+        }
+        return size;
+      }
+      if (transferable.isDataFlavorSupported(DataFlavor.stringFlavor))
+      {
+        return utf8Length((String) transferable.getTransferData(DataFlavor.stringFlavor));
+      }
+    }
+    catch (UnsupportedFlavorException | IOException | RuntimeException e)
+    {
+      // unknown size
+    }
+    return 0;
+  }
+
+  /**
+   * @return the number of bytes the text needs in UTF-8, without encoding it.
+   */
+  static long utf8Length(String text)
+  {
+    long length = 0;
+    for (int i = 0; i < text.length(); i++)
+    {
+      char c = text.charAt(i);
+      if (c < 0x80)
+      {
+        length++;
+      }
+      else if (c < 0x800)
+      {
+        length += 2;
+      }
+      else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1)))
+      {
+        length += 4;
+        i++;
+      }
+      else
+      {
+        // a lone surrogate is encoded as '?'
+        length += Character.isSurrogate(c) ? 1 : 3;
+      }
+    }
+    return length;
+  }
+}
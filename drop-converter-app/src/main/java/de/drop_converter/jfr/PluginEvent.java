@@ -0,0 +1,35 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.jfr;
+
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+import de.drop_converter.PluginWrapper;
+
+/**
+ * The fields of all events that belong to a plugin.
+ *
+ * @author Thomas Chojecki
+ */
+abstract class PluginEvent extends Event
+{
+  @Label("Plugin Name")
+  public String pluginName;
+
+  @Label("Plugin Version")
+  public String pluginVersion;
+
+  /**
+   * Set the plugin fields, should only be called if the event will be committed.
+   */
+  public void setPlugin(PluginWrapper plugin)
+  {
+    if (plugin != null)
+    {
+      pluginName = plugin.getPluginName();
+      pluginVersion = plugin.getPluginVersion();
+    }
+  }
+}
@@ -0,0 +1,32 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A state change of a plugin, recorded around the call of the plugin.
+ *
+ * @author Thomas Chojecki
+ */
+@Name("de.drop_converter.PluginLifecycle")
+@Label("Plugin Lifecycle")
+@Description("Initialization, enabling, disabling or destruction of a plugin")
+@Category({ "Drop Converter", "Plugins" })
+public class PluginLifecycleEvent extends PluginEvent
+{
+  public static final String INITIALIZE = "initialize";
+  public static final String ENABLE = "enable";
+  public static final String DISABLE = "disable";
+  public static final String DESTROY = "destroy";
+
+  @Label("Transition")
+  public String transition;
+
+  @Label("Success")
+  public boolean success;
+}
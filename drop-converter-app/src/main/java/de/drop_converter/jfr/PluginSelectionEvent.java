@@ -0,0 +1,32 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The user selected another plugin in the plugin chooser. The event spans disabling the old and enabling the new
+ * plugin.
+ *
+ * @author Thomas Chojecki
+ */
+@Name("de.drop_converter.PluginSelection")
+@Label("Plugin Selection")
+@Description("Another plugin was selected in the plugin chooser")
+@Category({ "Drop Converter", "Plugins" })
+public class PluginSelectionEvent extends PluginEvent
+{
+  @Label("Previous Plugin")
+  public String previousPlugin;
+
+  @Label("Success")
+  public boolean success;
+
+  @Label("Warm")
+  @Description("The selected plugin was still enabled from an earlier selection")
+  public boolean warm;
+}
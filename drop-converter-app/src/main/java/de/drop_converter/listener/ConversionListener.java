@@ -0,0 +1,18 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.listener;
+
+import de.drop_converter.conversion.ConversionJob;
+import de.drop_converter.plugin.exception.ConverterException;
+
+/**
+ * Notify about the result of a conversion job. The methods will be called through the callback executor of the
+ * <code>ConversionEngine</code>, which is the EDT for the GUI.
+ */
+public interface ConversionListener
+{
+  public void conversionFinished(ConversionJob job, boolean result);
+
+  public void conversionFailed(ConversionJob job, ConverterException e);
+}
@@ -0,0 +1,17 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.listener;
+
+import java.nio.file.Path;
+
+/**
+ * Notify about files in a watched directory. The events are already debounced, so a file will be reported once after
+ * it was completely written.
+ */
+public interface DirectoryListener
+{
+  public void fileChanged(Path file);
+
+  public void fileDeleted(Path file);
+}
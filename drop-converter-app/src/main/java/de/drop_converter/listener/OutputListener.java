@@ -0,0 +1,17 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.listener;
+
+import java.io.File;
+
+/**
+ * Notify about the files the streaming plugins write. Will be called on the conversion threads.
+ */
+public interface OutputListener
+{
+  /**
+   * @param file is the output that will be written, called before the file is created.
+   */
+  public void outputCreated(File file);
+}
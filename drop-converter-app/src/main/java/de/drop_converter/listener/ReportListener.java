@@ -0,0 +1,14 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.listener;
+
+import de.drop_converter.conversion.ConversionReport;
+
+/**
+ * Notify once all plugins of a drop that was handed to several plugins are done.
+ */
+public interface ReportListener
+{
+  public void reportFinished(ConversionReport report);
+}
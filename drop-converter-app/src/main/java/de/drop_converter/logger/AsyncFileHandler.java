@@ -0,0 +1,501 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+
+/**
+ * A file handler that does not write on the logging thread. The records are handed to a bounded lock-free queue and
+ * written in batches by a background thread, so the EDT and the plugins are not slowed down by the disk. What happens
+ * if the queue is full is defined by the {@link OverflowPolicy}.
+ * <p>
+ * The handler is configured through the <code>LogManager</code>, like the <code>FileHandler</code>:
+ * <ul>
+ * <li>de.drop_converter.logger.AsyncFileHandler.pattern - the log file, <code>%h</code> is the user home and
+ * <code>%t</code> the temp directory (default <code>%h/.drop_converter/logging/drop-converter.log</code>)</li>
+ * <li>de.drop_converter.logger.AsyncFileHandler.limit - truncate the file if it grows larger (default 0, no
+ * limit)</li>
+ * <li>de.drop_converter.logger.AsyncFileHandler.append - append to an existing file (default false)</li>
+ * <li>de.drop_converter.logger.AsyncFileHandler.level - the level of the handler (default ALL)</li>
+ * <li>de.drop_converter.logger.AsyncFileHandler.formatter - the formatter (default ShortFormatter)</li>
+ * <li>de.drop_converter.logger.AsyncFileHandler.encoding - the encoding of the file (default platform encoding)</li>
+ * <li>de.drop_converter.logger.AsyncFileHandler.capacity - the size of the queue (default 8192)</li>
+ * <li>de.drop_converter.logger.AsyncFileHandler.batchSize - the size of the write buffer in bytes (default 65536)</li>
+ * <li>de.drop_converter.logger.AsyncFileHandler.policy - DROP, BLOCK or SAMPLE (default DROP)</li>
+ * <li>de.drop_converter.logger.AsyncFileHandler.sampleRate - keep every n-th record with SAMPLE (default 10)</li>
+ * </ul>
+ * The records are formatted on the background thread. Only the caller of a record will be determined before the
+ * record is queued, because it is taken from the stack of the logging thread.
+ *
+ * @author Thomas Chojecki
+ */
+public class AsyncFileHandler extends Handler
+{
+  /**
+   * What happens to a record if the queue is full.
+   */
+  public enum OverflowPolicy
+  {
+    /** drop the record */
+    DROP,
+    /** wait until the record can be queued */
+    BLOCK,
+    /** wait for warnings, errors and every n-th other record, drop the rest */
+    SAMPLE
+  }
+
+  // the time the writer sleeps if there is nothing to write, it will be woken up by new records
+  private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(500);
+
+  // the time a blocked producer waits before trying again
+  private static final long BLOCK_WAIT = TimeUnit.MICROSECONDS.toNanos(100);
+
+  private static final long FLUSH_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+
+  private final RingBuffer<LogRecord> queue;
+
+  private final OverflowPolicy policy;
+
+  private final int sampleRate;
+
+  private final long limit;
+
+  private final ByteBuffer buffer;
+
+  private FileChannel channel;
+
+  private long fileSize;
+
+  private final Thread writer;
+
+  private final AtomicBoolean writerSleeping = new AtomicBoolean();
+
+  private final AtomicLong dropped = new AtomicLong();
+
+  private final AtomicLong overflows = new AtomicLong();
+
+  // the number of records the writer has taken from the queue and written to the file
+  private volatile long written = 0;
+
+  private volatile boolean closed = false;
+
+  /**
+   * Create a handler that is configured through the <code>LogManager</code>.
+   */
+  public AsyncFileHandler()
+  {
+    this(getProperty("pattern", "%h/.drop_converter/logging/drop-converter.log"), getIntProperty("capacity", 8192), getPolicyProperty());
+  }
+
+  /**
+   * Create a handler. All other settings are read from the <code>LogManager</code>.
+   *
+   * @param pattern is the log file, <code>%h</code> is the user home and <code>%t</code> the temp directory.
+   * @param capacity is the number of records that can be queued.
+   * @param policy defines what happens if the queue is full.
+   */
+  public AsyncFileHandler(String pattern, int capacity, OverflowPolicy policy)
+  {
+    this.queue = new RingBuffer<>(capacity);
+    this.policy = policy;
+    this.sampleRate = Math.max(1, getIntProperty("sampleRate", 10));
+    this.limit = Math.max(0, getIntProperty("limit", 0));
+    this.buffer = ByteBuffer.allocate(Math.max(1024, getIntProperty("batchSize", 65536)));
+
+    try
+    {
+      setLevel(Level.parse(getProperty("level", Level.ALL.getName())));
+    }
+    catch (IllegalArgumentException e)
+    {
+      setLevel(Level.ALL);
+    }
+    setFormatter(createFormatter(getProperty("formatter", ShortFormatter.class.getName())));
+    try
+    {
+      setEncoding(getProperty("encoding", null));
+    }
+    catch (UnsupportedEncodingException e)
+    {
+      reportError("Unsupported encoding, using the platform encoding.", e, ErrorManager.GENERIC_FAILURE);
+    }
+
+    open(new File(resolve(pattern)), Boolean.parseBoolean(getProperty("append", "false")));
+
+    writer = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        writeRecords();
+      }
+    }, "log-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  @Override
+  public void publish(LogRecord record)
+  {
+    if (closed || !isLoggable(record))
+    {
+      return;
+    }
+
+    // the caller is taken from the current stack, so it need to be known before the record leaves the thread
+    record.getSourceClassName();
+
+    if (!queue.offer(record))
+    {
+      overflow(record);
+    }
+    wakeWriter();
+  }
+
+  private void overflow(LogRecord record)
+  {
+    switch (policy)
+    {
+      case BLOCK:
+        block(record);
+        break;
+      case SAMPLE:
+        if (record.getLevel().intValue() >= Level.WARNING.intValue() || overflows.incrementAndGet() % sampleRate == 0)
+        {
+          block(record);
+        }
+        else
+        {
+          dropped.incrementAndGet();
+        }
+        break;
+      default:
+        dropped.incrementAndGet();
+        break;
+    }
+  }
+
+  private void block(LogRecord record)
+  {
+    // the writer would wait for itself
+    if (Thread.currentThread() == writer)
+    {
+      dropped.incrementAndGet();
+      return;
+    }
+
+    while (!queue.offer(record))
+    {
+      if (closed)
+      {
+        dropped.incrementAndGet();
+        return;
+      }
+      wakeWriter();
+      LockSupport.parkNanos(this, BLOCK_WAIT);
+    }
+  }
+
+  private void wakeWriter()
+  {
+    if (writerSleeping.get() && writerSleeping.compareAndSet(true, false))
+    {
+      LockSupport.unpark(writer);
+    }
+  }
+
+  /**
+   * The loop of the background thread. All records that are available will be written in one batch.
+   */
+  private void writeRecords()
+  {
+    long taken = 0;
+    while (true)
+    {
+      LogRecord record = queue.poll();
+      if (record == null)
+      {
+        reportDropped();
+        writeBuffer();
+        written = taken;
+        if (closed)
+        {
+          return;
+        }
+
+        writerSleeping.set(true);
+        // a record could be queued after the last poll, without seeing the sleeping writer
+        if (queue.size() == 0)
+        {
+          LockSupport.parkNanos(this, IDLE_WAIT);
+        }
+        writerSleeping.set(false);
+        continue;
+      }
+
+      taken++;
+      reportDropped();
+      try
+      {
+        append(getFormatter().format(record));
+      }
+      catch (RuntimeException e)
+      {
+        reportError(null, e, ErrorManager.FORMAT_FAILURE);
+      }
+    }
+  }
+
+  private void reportDropped()
+  {
+    long droppedRecords = dropped.getAndSet(0);
+    if (droppedRecords > 0)
+    {
+      append(droppedRecords + " log records dropped, the log queue was full.\n");
+    }
+  }
+
+  private void append(String text)
+  {
+    String encoding = getEncoding();
+    byte[] bytes = encoding == null ? text.getBytes(Charset.defaultCharset()) : text.getBytes(Charset.forName(encoding));
+    if (bytes.length > buffer.remaining())
+    {
+      writeBuffer();
+    }
+
+    if (bytes.length > buffer.capacity())
+    {
+      write(ByteBuffer.wrap(bytes));
+    }
+    else
+    {
+      buffer.put(bytes);
+    }
+  }
+
+  private void writeBuffer()
+  {
+    if (buffer.position() > 0)
+    {
+      buffer.flip();
+      write(buffer);
+      buffer.clear();
+    }
+  }
+
+  private void write(ByteBuffer bytes)
+  {
+    if (channel == null)
+    {
+      return;
+    }
+
+    try
+    {
+      if (limit > 0 && fileSize > 0 && fileSize + bytes.remaining() > limit)
+      {
+        // like a FileHandler with one file, start again with an empty file
+        channel.truncate(0);
+        channel.position(0);
+        fileSize = 0;
+      }
+      while (bytes.hasRemaining())
+      {
+        fileSize += channel.write(bytes);
+      }
+    }
+    catch (IOException e)
+    {
+      reportError(null, e, ErrorManager.WRITE_FAILURE);
+    }
+  }
+
+  /**
+   * Wait until all records that were published before are written to the file.
+   */
+  @Override
+  public void flush()
+  {
+    if (Thread.currentThread() == writer || !writer.isAlive())
+    {
+      return;
+    }
+
+    long target = queue.getEnqueued();
+    long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT;
+    while (written < target && writer.isAlive() && System.currentTimeMillis() < deadline)
+    {
+      writerSleeping.set(false);
+      LockSupport.unpark(writer);
+      LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+    }
+  }
+
+  /**
+   * Write the queued records and close the file.
+   */
+  @Override
+  public void close()
+  {
+    if (closed)
+    {
+      return;
+    }
+    closed = true;
+    LockSupport.unpark(writer);
+    try
+    {
+      writer.join(FLUSH_TIMEOUT);
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+
+    if (channel != null)
+    {
+      try
+      {
+        channel.close();
+      }
+      catch (IOException e)
+      {
+        reportError(null, e, ErrorManager.CLOSE_FAILURE);
+      }
+    }
+  }
+
+  /**
+   * @return the number of records in the queue.
+   */
+  public int getQueuedRecords()
+  {
+    return queue.size();
+  }
+
+  /**
+   * @return the number of records that were dropped and not yet reported in the log file.
+   */
+  public long getDroppedRecords()
+  {
+    return dropped.get();
+  }
+
+  private void open(File file, boolean append)
+  {
+    try
+    {
+      File parent = file.getAbsoluteFile().getParentFile();
+      if (parent != null && !parent.isDirectory())
+      {
+        parent.mkdirs();
+      }
+
+      channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      if (append)
+      {
+        fileSize = channel.size();
+        channel.position(fileSize);
+      }
+      else
+      {
+        channel.truncate(0);
+      }
+    }
+    catch (IOException e)
+    {
+      reportError("Could not open log file " + file, e, ErrorManager.OPEN_FAILURE);
+    }
+  }
+
+  private static String resolve(String pattern)
+  {
+    StringBuilder path = new StringBuilder();
+    for (int i = 0; i < pattern.length(); i++)
+    {
+      char c = pattern.charAt(i);
+      if (c == '%' && i + 1 < pattern.length())
+      {
+        char next = pattern.charAt(++i);
+        if (next == 'h')
+        {
+          path.append(System.getProperty("user.home"));
+          continue;
+        }
+        if (next == 't')
+        {
+          path.append(System.getProperty("java.io.tmpdir"));
+          continue;
+        }
+        if (next != '%')
+        {
+          path.append(c);
+        }
+        c = next;
+      }
+      path.append(c);
+    }
+    return path.toString();
+  }
+
+  private Formatter createFormatter(String className)
+  {
+    try
+    {
+      return (Formatter) ClassLoader.getSystemClassLoader().loadClass(className).getDeclaredConstructor().newInstance();
+    }
+    catch (ReflectiveOperationException | ClassCastException e)
+    {
+      reportError("Could not create formatter " + className, e, ErrorManager.GENERIC_FAILURE);
+      return new ShortFormatter();
+    }
+  }
+
+  private static String getProperty(String name, String defaultValue)
+  {
+    String value = LogManager.getLogManager().getProperty(AsyncFileHandler.class.getName() + '.' + name);
+    return value == null ? defaultValue : value.trim();
+  }
+
+  private static OverflowPolicy getPolicyProperty()
+  {
+    try
+    {
+      return OverflowPolicy.valueOf(getProperty("policy", OverflowPolicy.DROP.name()).toUpperCase());
+    }
+    catch (IllegalArgumentException e)
+    {
+      return OverflowPolicy.DROP;
+    }
+  }
+
+  private static int getIntProperty(String name, int defaultValue)
+  {
+    try
+    {
+      return Integer.parseInt(getProperty(name, String.valueOf(defaultValue)));
+    }
+    catch (NumberFormatException e)
+    {
+      return defaultValue;
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded lock-free queue for many producers and consumers. Each slot has a sequence number that tells if the slot
+ * can be written or read in the current round, so producers and consumers only compete through a compare-and-set on
+ * their own position.
+ *
+ * @author Thomas Chojecki
+ */
+class RingBuffer<E>
+{
+  private final int mask;
+
+  private final AtomicReferenceArray<E> elements;
+
+  private final AtomicLongArray sequences;
+
+  private final AtomicLong enqueuePosition = new AtomicLong();
+
+  private final AtomicLong dequeuePosition = new AtomicLong();
+
+  /**
+   * @param capacity is the minimum capacity. It will be rounded up to the next power of two.
+   */
+  RingBuffer(int capacity)
+  {
+    if (capacity < 1 || capacity > 1 << 30)
+    {
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity)
+    {
+      size <<= 1;
+    }
+
+    mask = size - 1;
+    elements = new AtomicReferenceArray<>(size);
+    sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++)
+    {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * @return false if the queue is full.
+   */
+  boolean offer(E element)
+  {
+    long position = enqueuePosition.get();
+    int index;
+    while (true)
+    {
+      index = (int) position & mask;
+      long difference = sequences.get(index) - position;
+      if (difference == 0)
+      {
+        if (enqueuePosition.compareAndSet(position, position + 1))
+        {
+          break;
+        }
+        position = enqueuePosition.get();
+      }
+      else if (difference < 0)
+      {
+        // the slot was not read in the last round yet
+        return false;
+      }
+      else
+      {
+        // another producer took the slot
+        position = enqueuePosition.get();
+      }
+    }
+
+    elements.set(index, element);
+    sequences.set(index, position + 1);
+    return true;
+  }
+
+  /**
+   * @return the oldest element or null if the queue is empty.
+   */
+  E poll()
+  {
+    long position = dequeuePosition.get();
+    int index;
+    while (true)
+    {
+      index = (int) position & mask;
+      long difference = sequences.get(index) - (position + 1);
+      if (difference == 0)
+      {
+        if (dequeuePosition.compareAndSet(position, position + 1))
+        {
+          break;
+        }
+        position = dequeuePosition.get();
+      }
+      else if (difference < 0)
+      {
+        // the slot was not written in this round yet
+        return null;
+      }
+      else
+      {
+        position = dequeuePosition.get();
+      }
+    }
+
+    E element = elements.get(index);
+    elements.set(index, null);
+    sequences.set(index, position + mask + 1);
+    return element;
+  }
+
+  /**
+   * @return the number of elements that were added so far.
+   */
+  long getEnqueued()
+  {
+    return enqueuePosition.get();
+  }
+
+  /**
+   * @return the approximate number of elements in the queue.
+   */
+  int size()
+  {
+    return (int) Math.max(0, enqueuePosition.get() - dequeuePosition.get());
+  }
+
+  int capacity()
+  {
+    return mask + 1;
+  }
+}
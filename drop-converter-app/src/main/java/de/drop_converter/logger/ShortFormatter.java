@@ -3,33 +3,175 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package de.drop_converter.logger;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.text.FieldPosition;
+import java.text.MessageFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Formatter;
 import java.util.logging.Handler;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
+/**
+ * Format a log record as a single line: <code>dd/MM/yyyy hh:mm:ss.SSS - [class.method] - [LEVEL] - message</code>.
+ * The formatter is thread-safe. Each thread reuses its own buffer, the formatted second and the
+ * <code>[class.method]</code> segments are cached, so formatting a record without parameters only allocates the
+ * resulting string. Message patterns of records with parameters are cached per thread as well.
+ */
 public class ShortFormatter extends Formatter
 {
-  //
-  // Create a DateFormat to format the logger timestamp.
-  //
-  private static final DateFormat df = new SimpleDateFormat("dd/MM/yyyy hh:mm:ss.SSS");
+  // immutable and thread-safe, so all threads share it
+  private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy hh:mm:ss");
+
+  // buffers that grew larger than this will not be kept
+  private static final int MAX_BUFFER_SIZE = 8192;
+
+  private static final ThreadLocal<Buffer> BUFFER = new ThreadLocal<Buffer>()
+  {
+    @Override
+    protected Buffer initialValue()
+    {
+      return new Buffer();
+    }
+  };
+
+  // the "[class.method] - " segments by class and method name
+  private final ConcurrentMap<String, ConcurrentMap<String, String>> sources = new ConcurrentHashMap<>();
 
   @Override
   public String format(LogRecord record)
   {
-    StringBuilder builder = new StringBuilder(1000);
-    builder.append(df.format(new Date(record.getMillis()))).append(" - ");
-    builder.append('[').append(record.getSourceClassName()).append('.');
-    builder.append(record.getSourceMethodName()).append("] - ");
-    builder.append('[').append(record.getLevel()).append("] - ");
-    builder.append(formatMessage(record));
+    Buffer buffer = BUFFER.get();
+    StringBuilder builder = buffer.builder;
+    builder.setLength(0);
+
+    appendTimestamp(buffer, record.getMillis());
+    builder.append(" - ");
+    builder.append(getSource(record.getSourceClassName(), record.getSourceMethodName()));
+    builder.append('[').append(record.getLevel().getName()).append("] - ");
+    if (record.getResourceBundle() == null)
+    {
+      appendMessage(buffer, record.getMessage(), record.getParameters());
+    }
+    else
+    {
+      builder.append(formatMessage(record));
+    }
     builder.append('\n');
-    return builder.toString();
+
+    String result = builder.toString();
+    if (builder.capacity() > MAX_BUFFER_SIZE)
+    {
+      buffer.builder = new StringBuilder(Buffer.BUFFER_SIZE);
+    }
+    return result;
+  }
+
+  /**
+   * Append the timestamp. The date format will only be used once per second, the milliseconds are appended by hand.
+   */
+  private static void appendTimestamp(Buffer buffer, long millis)
+  {
+    long second = millis / 1000;
+    if (second != buffer.second)
+    {
+      buffer.second = second;
+      buffer.formattedSecond = DATE_FORMAT.format(Instant.ofEpochSecond(second).atZone(ZoneId.systemDefault()));
+    }
+
+    int milli = (int) (millis - second * 1000);
+    StringBuilder builder = buffer.builder;
+    builder.append(buffer.formattedSecond).append('.');
+    builder.append((char) ('0' + milli / 100)).append((char) ('0' + milli / 10 % 10)).append((char) ('0' + milli % 10));
+  }
+
+  /**
+   * Append the message like {@link #formatMessage(LogRecord)} does, but reuse the <code>MessageFormat</code>.
+   */
+  private static void appendMessage(Buffer buffer, String message, Object[] parameters)
+  {
+    StringBuilder builder = buffer.builder;
+    if (parameters == null || parameters.length == 0 || message == null
+        || (message.indexOf("{0") < 0 && message.indexOf("{1") < 0 && message.indexOf("{2") < 0 && message.indexOf("{3") < 0))
+    {
+      builder.append(message);
+      return;
+    }
+
+    try
+    {
+      MessageFormat messageFormat = buffer.messageFormats.get(message);
+      if (messageFormat == null)
+      {
+        if (buffer.messageFormats.size() >= Buffer.MAX_MESSAGE_FORMATS)
+        {
+          buffer.messageFormats.clear();
+        }
+        messageFormat = new MessageFormat(message);
+        buffer.messageFormats.put(message, messageFormat);
+      }
+
+      buffer.messageBuffer.setLength(0);
+      messageFormat.format(parameters, buffer.messageBuffer, buffer.fieldPosition);
+      builder.append(buffer.messageBuffer);
+    }
+    catch (IllegalArgumentException e)
+    {
+      // same as formatMessage, use the raw message if it is not a valid pattern
+      builder.append(message);
+    }
+  }
+
+  private String getSource(String className, String methodName)
+  {
+    ConcurrentMap<String, String> methods = sources.get(String.valueOf(className));
+    if (methods == null)
+    {
+      methods = new ConcurrentHashMap<>();
+      ConcurrentMap<String, String> existing = sources.putIfAbsent(String.valueOf(className), methods);
+      if (existing != null)
+      {
+        methods = existing;
+      }
+    }
+
+    String source = methods.get(String.valueOf(methodName));
+    if (source == null)
+    {
+      source = "[" + className + '.' + methodName + "] - ";
+      methods.putIfAbsent(String.valueOf(methodName), source);
+    }
+    return source;
+  }
+
+  /**
+   * The reusable state of a thread.
+   */
+  private static class Buffer
+  {
+    static final int BUFFER_SIZE = 256;
+
+    StringBuilder builder = new StringBuilder(BUFFER_SIZE);
+
+    // the last formatted second, the timestamps are in millis since 1970 and therefore -1 is never used
+    long second = -1;
+
+    String formattedSecond;
+
+    // the message formats by pattern, they are not thread-safe
+    static final int MAX_MESSAGE_FORMATS = 64;
+
+    final Map<String, MessageFormat> messageFormats = new HashMap<>();
+
+    final StringBuffer messageBuffer = new StringBuffer(BUFFER_SIZE);
+
+    final FieldPosition fieldPosition = new FieldPosition(0);
   }
 
   @Override
@@ -0,0 +1,24 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.management;
+
+/**
+ * The state of the conversion engine, registered as <code>de.drop_converter:type=ConversionEngine</code>.
+ *
+ * @author Thomas Chojecki
+ */
+public interface ConversionEngineMXBean
+{
+  public int getQueuedJobs();
+
+  public int getActiveJobs();
+
+  public long getCompletedJobs();
+
+  public long getRejectedJobs();
+
+  public int getThreads();
+
+  public int getQueueCapacity();
+}
@@ -0,0 +1,96 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.management;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram with fixed buckets. Recording a value only needs a few atomic increments, so it can be used on
+ * every call.
+ *
+ * @author Thomas Chojecki
+ */
+public class LatencyHistogram
+{
+  /**
+   * The upper bounds of the buckets in milliseconds. The last bucket contains all larger values.
+   */
+  public static final long[] BUCKET_BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000 };
+
+  private static final long[] BUCKET_BOUNDS_NANOS = new long[BUCKET_BOUNDS.length];
+
+  static
+  {
+    for (int i = 0; i < BUCKET_BOUNDS.length; i++)
+    {
+      BUCKET_BOUNDS_NANOS[i] = TimeUnit.MILLISECONDS.toNanos(BUCKET_BOUNDS[i]);
+    }
+  }
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+
+  private final AtomicLong count = new AtomicLong();
+
+  private final AtomicLong totalNanos = new AtomicLong();
+
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  /**
+   * @param nanos is the measured latency in nanoseconds.
+   */
+  public void record(long nanos)
+  {
+    int bucket = 0;
+    while (bucket < BUCKET_BOUNDS_NANOS.length && nanos > BUCKET_BOUNDS_NANOS[bucket])
+    {
+      bucket++;
+    }
+    buckets.incrementAndGet(bucket);
+    count.incrementAndGet();
+    totalNanos.addAndGet(nanos);
+
+    long max = maxNanos.get();
+    while (nanos > max && !maxNanos.compareAndSet(max, nanos))
+    {
+      max = maxNanos.get();
+    }
+  }
+
+  public long getCount()
+  {
+    return count.get();
+  }
+
+  /**
+   * @return the number of values per bucket, see {@link #BUCKET_BOUNDS}.
+   */
+  public long[] getBuckets()
+  {
+    long[] result = new long[buckets.length()];
+    for (int i = 0; i < result.length; i++)
+    {
+      result[i] = buckets.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * @return the mean latency in milliseconds.
+   */
+  public double getMeanMillis()
+  {
+    long n = count.get();
+    return n == 0 ? 0 : totalNanos.get() / (double) n / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  /**
+   * @return the maximum latency in milliseconds.
+   */
+  public double getMaxMillis()
+  {
+    return maxNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+}
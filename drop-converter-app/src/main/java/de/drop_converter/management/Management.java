@@ -0,0 +1,118 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.management;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import de.drop_converter.PluginWrapper;
+
+/**
+ * Register the MBeans of the converter at the platform <code>MBeanServer</code>. Errors will only be logged, the
+ * converter works without them.
+ *
+ * @author Thomas Chojecki
+ */
+public final class Management
+{
+  private static final Logger LOG = Logger.getLogger(Management.class.getName());
+
+  public static final String DOMAIN = "de.drop_converter";
+
+  private Management()
+  {}
+
+  /**
+   * @return the name of the MBean of a plugin. Plugins can have the same name, so the class and the jar are part of it.
+   */
+  public static ObjectName pluginName(PluginWrapper plugin)
+  {
+    String properties = "type=Plugin,name=" + ObjectName.quote(plugin.getPluginName()) + ",class=" + ObjectName.quote(plugin.getPluginClassName());
+    if (plugin.getPluginJar() != null)
+    {
+      properties += ",jar=" + ObjectName.quote(plugin.getPluginJar().getJar().getAbsolutePath());
+    }
+    return objectName(properties);
+  }
+
+  /**
+   * @return the name of the MBean of the conversion engine.
+   */
+  public static ObjectName conversionEngineName()
+  {
+    return objectName("type=ConversionEngine");
+  }
+
+  /**
+   * Register the MBean. An existing MBean with the same name will be replaced.
+   */
+  public static void register(Object mbean, ObjectName name)
+  {
+    if (name == null)
+    {
+      return;
+    }
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try
+    {
+      try
+      {
+        server.registerMBean(mbean, name);
+      }
+      catch (InstanceAlreadyExistsException e)
+      {
+        server.unregisterMBean(name);
+        server.registerMBean(mbean, name);
+      }
+    }
+    catch (JMException | RuntimeException e)
+    {
+      LOG.log(Level.WARNING, "Could not register MBean " + name, e);
+    }
+  }
+
+  /**
+   * Unregister the MBean if it is registered.
+   */
+  public static void unregister(ObjectName name)
+  {
+    if (name == null)
+    {
+      return;
+    }
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try
+    {
+      if (server.isRegistered(name))
+      {
+        server.unregisterMBean(name);
+      }
+    }
+    catch (JMException | RuntimeException e)
+    {
+      LOG.log(Level.WARNING, "Could not unregister MBean " + name, e);
+    }
+  }
+
+  private static ObjectName objectName(String properties)
+  {
+    try
+    {
+      return new ObjectName(DOMAIN + ':' + properties);
+    }
+    catch (JMException e)
+    {
+      LOG.log(Level.WARNING, "Invalid MBean name " + properties, e);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,178 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.management;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Record the calls of a plugin. The recording only costs two <code>System.nanoTime()</code> calls and a few atomic
+ * increments per call, so it is always enabled.
+ *
+ * @author Thomas Chojecki
+ */
+public class PluginMetrics implements PluginMetricsMXBean
+{
+  private final String pluginName;
+
+  private final long created = System.nanoTime();
+
+  private final LatencyHistogram conversions = new LatencyHistogram();
+
+  private final AtomicLong conversionFailures = new AtomicLong();
+
+  private final LatencyHistogram canImport = new LatencyHistogram();
+
+  private final AtomicLong initNanos = new AtomicLong();
+
+  private final AtomicLong enableNanos = new AtomicLong();
+
+  private final AtomicLong enableCount = new AtomicLong();
+
+  private final AtomicLong disableNanos = new AtomicLong();
+
+  private final AtomicLong disableCount = new AtomicLong();
+
+  public PluginMetrics(String pluginName)
+  {
+    this.pluginName = pluginName;
+  }
+
+  /**
+   * @param nanos is the time the plugin needed for the conversion.
+   * @param failed is true if the plugin threw an exception.
+   */
+  public void recordConversion(long nanos, boolean failed)
+  {
+    conversions.record(nanos);
+    if (failed)
+    {
+      conversionFailures.incrementAndGet();
+    }
+  }
+
+  public void recordCanImport(long nanos)
+  {
+    canImport.record(nanos);
+  }
+
+  public void recordInitPlugin(long nanos)
+  {
+    initNanos.addAndGet(nanos);
+  }
+
+  public void recordEnablePlugin(long nanos)
+  {
+    enableNanos.addAndGet(nanos);
+    enableCount.incrementAndGet();
+  }
+
+  public void recordDisablePlugin(long nanos)
+  {
+    disableNanos.addAndGet(nanos);
+    disableCount.incrementAndGet();
+  }
+
+  @Override
+  public String getPluginName()
+  {
+    return pluginName;
+  }
+
+  @Override
+  public long getConversions()
+  {
+    return conversions.getCount();
+  }
+
+  @Override
+  public long getConversionFailures()
+  {
+    return conversionFailures.get();
+  }
+
+  @Override
+  public double getConversionLatencyMean()
+  {
+    return conversions.getMeanMillis();
+  }
+
+  @Override
+  public double getConversionLatencyMax()
+  {
+    return conversions.getMaxMillis();
+  }
+
+  @Override
+  public long[] getConversionLatencyHistogram()
+  {
+    return conversions.getBuckets();
+  }
+
+  @Override
+  public long[] getConversionLatencyBuckets()
+  {
+    return LatencyHistogram.BUCKET_BOUNDS.clone();
+  }
+
+  @Override
+  public long getCanImportCalls()
+  {
+    return canImport.getCount();
+  }
+
+  @Override
+  public double getCanImportRate()
+  {
+    double seconds = (System.nanoTime() - created) / (double) TimeUnit.SECONDS.toNanos(1);
+    return seconds <= 0 ? 0 : canImport.getCount() / seconds;
+  }
+
+  @Override
+  public double getCanImportLatencyMean()
+  {
+    return canImport.getMeanMillis();
+  }
+
+  @Override
+  public double getCanImportLatencyMax()
+  {
+    return canImport.getMaxMillis();
+  }
+
+  @Override
+  public double getInitPluginTime()
+  {
+    return toMillis(initNanos.get());
+  }
+
+  @Override
+  public double getEnablePluginTime()
+  {
+    return toMillis(enableNanos.get());
+  }
+
+  @Override
+  public long getEnablePluginCount()
+  {
+    return enableCount.get();
+  }
+
+  @Override
+  public double getDisablePluginTime()
+  {
+    return toMillis(disableNanos.get());
+  }
+
+  @Override
+  public long getDisablePluginCount()
+  {
+    return disableCount.get();
+  }
+
+  private static double toMillis(long nanos)
+  {
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+}
@@ -0,0 +1,54 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.management;
+
+/**
+ * The metrics of a plugin, registered as <code>de.drop_converter:type=Plugin,name=&lt;plugin name&gt;</code>. All
+ * times are in milliseconds.
+ *
+ * @author Thomas Chojecki
+ */
+public interface PluginMetricsMXBean
+{
+  public String getPluginName();
+
+  public long getConversions();
+
+  public long getConversionFailures();
+
+  public double getConversionLatencyMean();
+
+  public double getConversionLatencyMax();
+
+  /**
+   * @return the number of conversions per latency bucket.
+   */
+  public long[] getConversionLatencyHistogram();
+
+  /**
+   * @return the upper bounds of the latency buckets, the last bucket contains all slower conversions.
+   */
+  public long[] getConversionLatencyBuckets();
+
+  public long getCanImportCalls();
+
+  /**
+   * @return the average number of canImport calls per second since the plugin was registered.
+   */
+  public double getCanImportRate();
+
+  public double getCanImportLatencyMean();
+
+  public double getCanImportLatencyMax();
+
+  public double getInitPluginTime();
+
+  public double getEnablePluginTime();
+
+  public long getEnablePluginCount();
+
+  public double getDisablePluginTime();
+
+  public long getDisablePluginCount();
+}
@@ -0,0 +1,318 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.watch;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.drop_converter.listener.DirectoryListener;
+
+/**
+ * Watch a directory for new, changed and deleted files. Events for the same file will be coalesced and a file will only
+ * be reported after it did not change for a quiet period, so files that are still written will not be reported.
+ * All listener calls are made from a single thread.
+ *
+ * @author Thomas Chojecki
+ */
+public class DirectoryWatcher implements Closeable
+{
+  private static final Logger LOG = Logger.getLogger(DirectoryWatcher.class.getName());
+
+  private final Path directory;
+
+  private final long quietPeriod;
+
+  private final DirectoryListener listener;
+
+  private final Map<Path, Pending> pending = new ConcurrentHashMap<>();
+
+  private final WatchService watchService;
+
+  private final ScheduledExecutorService scheduler;
+
+  private final Thread watchThread;
+
+  private volatile boolean closed = false;
+
+  /**
+   * @param directory is the directory that should be watched. Subdirectories will not be watched.
+   * @param quietPeriod is the time in milliseconds a file should not change before it will be reported.
+   * @param listener will be notified about the changes.
+   * @throws IOException if the directory could not be watched.
+   */
+  public DirectoryWatcher(Path directory, long quietPeriod, DirectoryListener listener) throws IOException
+  {
+    this.directory = directory;
+    this.quietPeriod = quietPeriod;
+    this.listener = listener;
+
+    watchService = directory.getFileSystem().newWatchService();
+    directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+
+    final String name = "directory-watcher-" + directory.getFileName();
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+    {
+      @Override
+      public Thread newThread(Runnable r)
+      {
+        Thread thread = new Thread(r, name);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    watchThread = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        processEvents();
+      }
+    }, name + "-events");
+    watchThread.setDaemon(true);
+  }
+
+  /**
+   * Start watching the directory.
+   *
+   * @param reportExisting if true, all files that already exist will be reported too.
+   */
+  public void start(boolean reportExisting)
+  {
+    if (reportExisting)
+    {
+      scan();
+    }
+    watchThread.start();
+
+    long period = Math.max(50, quietPeriod / 4);
+    scheduler.scheduleWithFixedDelay(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        checkPending();
+      }
+    }, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Take the events from the <code>WatchService</code> and mark the files as pending.
+   */
+  private void processEvents()
+  {
+    while (!closed)
+    {
+      WatchKey key;
+      try
+      {
+        key = watchService.take();
+      }
+      catch (InterruptedException | ClosedWatchServiceException e)
+      {
+        return;
+      }
+
+      for (WatchEvent<?> event : key.pollEvents())
+      {
+        if (event.kind() == OVERFLOW)
+        {
+          // events were lost, so check every file again
+          scan();
+          continue;
+        }
+
+        final Path file = directory.resolve((Path) event.context());
+        if (event.kind() == ENTRY_DELETE)
+        {
+          pending.remove(file);
+          scheduler.execute(new Runnable()
+          {
+            @Override
+            public void run()
+            {
+              listener.fileDeleted(file);
+            }
+          });
+        }
+        else
+        {
+          // coalesce all events of the file, the quiet period starts again
+          pending.put(file, observe(file, System.currentTimeMillis()));
+        }
+      }
+
+      if (!key.reset())
+      {
+        LOG.warning("Directory " + directory + " can not be watched anymore.");
+        return;
+      }
+    }
+  }
+
+  /**
+   * Mark all files inside the directory as pending.
+   */
+  private void scan()
+  {
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory))
+    {
+      long now = System.currentTimeMillis();
+      for (Path file : stream)
+      {
+        pending.put(file, observe(file, now));
+      }
+    }
+    catch (IOException e)
+    {
+      LOG.log(Level.WARNING, "Could not scan directory " + directory, e);
+    }
+  }
+
+  /**
+   * @return the pending state of the file with its current size and modification time, so the first check after the
+   *         quiet period can already tell if the file is stable.
+   */
+  private static Pending observe(Path file, long now)
+  {
+    Pending state = new Pending(now);
+    try
+    {
+      BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      state.size = attributes.size();
+      state.modified = attributes.lastModifiedTime().toMillis();
+    }
+    catch (IOException e)
+    {
+      // the file is gone or not accessible yet, the first check records its state
+    }
+    return state;
+  }
+
+  /**
+   * Report all pending files that did not change during the quiet period.
+   */
+  private void checkPending()
+  {
+    long now = System.currentTimeMillis();
+    Iterator<Entry<Path, Pending>> iterator = pending.entrySet().iterator();
+    while (iterator.hasNext())
+    {
+      Entry<Path, Pending> entry = iterator.next();
+      Path file = entry.getKey();
+      Pending state = entry.getValue();
+      if (now - state.lastChange < quietPeriod)
+      {
+        continue;
+      }
+
+      try
+      {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (!attributes.isRegularFile())
+        {
+          iterator.remove();
+          continue;
+        }
+
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        if (size != state.size || modified != state.modified)
+        {
+          // the file was changed since the last check, so it may still be written
+          state.size = size;
+          state.modified = modified;
+          state.lastChange = now;
+          continue;
+        }
+
+        if (isReadable(file) && pending.remove(file, state))
+        {
+          listener.fileChanged(file);
+        }
+      }
+      catch (IOException e)
+      {
+        // the file was deleted in the meantime
+        iterator.remove();
+      }
+      catch (RuntimeException e)
+      {
+        iterator.remove();
+        LOG.log(Level.WARNING, "Listener failed for file " + file, e);
+      }
+    }
+  }
+
+  /**
+   * Some systems lock files while they are written, so the file should be openable before it is reported.
+   */
+  private boolean isReadable(Path file)
+  {
+    try
+    {
+      FileChannel.open(file, StandardOpenOption.READ).close();
+      return true;
+    }
+    catch (IOException e)
+    {
+      return false;
+    }
+  }
+
+  /**
+   * @return the number of files that wait for the end of their quiet period.
+   */
+  public int getPendingFiles()
+  {
+    return pending.size();
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    closed = true;
+    scheduler.shutdown();
+    watchService.close();
+  }
+
+  /**
+   * The observed state of a pending file.
+   */
+  private static class Pending
+  {
+    volatile long lastChange;
+    volatile long size = -1;
+    volatile long modified = -1;
+
+    Pending(long lastChange)
+    {
+      this.lastChange = lastChange;
+    }
+  }
+}
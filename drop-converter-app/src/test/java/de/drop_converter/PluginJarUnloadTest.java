@@ -0,0 +1,166 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.drop_converter.plugin.ConverterPlugin;
+
+/**
+ * Unloading a plugin jar should release its <code>ClassLoader</code>, so the classes of the jar can be garbage
+ * collected.
+ *
+ * @author Thomas Chojecki
+ */
+public class PluginJarUnloadTest
+{
+  private static final String PLUGIN_CLASS = "unload.UnloadPlugin";
+
+  private static final String PLUGIN_SOURCE = "package unload;\n"
+      + "import javax.swing.TransferHandler.TransferSupport;\n"
+      + "import de.drop_converter.plugin.ConverterPluginAdapter;\n"
+      + "import de.drop_converter.plugin.annotations.ConverterPluginDetails;\n"
+      + "@ConverterPluginDetails(authorName = \"test\", pluginName = \"Unload\", pluginVersion = \"1\")\n"
+      + "public class UnloadPlugin extends ConverterPluginAdapter\n"
+      + "{\n"
+      + "  public boolean canImport(TransferSupport support) { return true; }\n"
+      + "  public boolean importData(TransferSupport support) { return true; }\n"
+      + "}\n";
+
+  // the time to wait for the garbage collector in milliseconds
+  private static final long GC_TIMEOUT = 10000;
+
+  private File directory;
+
+  private PluginHandler handler;
+
+  @Before
+  public void setUp() throws IOException
+  {
+    directory = Files.createTempDirectory("plugin-unload").toFile();
+    handler = new PluginHandler();
+  }
+
+  @After
+  public void tearDown()
+  {
+    handler.dispose();
+    deleteRecursively(directory);
+  }
+
+  @Test
+  public void classLoaderIsCollectedAfterUnload() throws Exception
+  {
+    File jar = buildPluginJar();
+    WeakReference<ClassLoader> classLoader = loadAndUnload(jar);
+
+    long deadline = System.currentTimeMillis() + GC_TIMEOUT;
+    while (classLoader.get() != null && System.currentTimeMillis() < deadline)
+    {
+      System.gc();
+      Thread.sleep(50);
+    }
+    assertNull("The class loader of the unloaded plugin jar was not garbage collected", classLoader.get());
+  }
+
+  /**
+   * Load the jar, use its plugin and unload it again. Runs in its own frame, so no local variable keeps the plugin.
+   */
+  private WeakReference<ClassLoader> loadAndUnload(File jar) throws Exception
+  {
+    List<PluginWrapper> loaded = handler.loadPluginJar(jar);
+    assertEquals(1, loaded.size());
+    PluginWrapper wrapper = loaded.get(0);
+    wrapper.enablePlugin();
+
+    ConverterPlugin plugin = wrapper.getPlugin();
+    ClassLoader classLoader = plugin.getClass().getClassLoader();
+    assertEquals(PLUGIN_CLASS, plugin.getClass().getName());
+    assertTrue("The plugin should be loaded by the class loader of its jar", classLoader != getClass().getClassLoader());
+    assertTrue(wrapper.getPluginJar().isLoaded());
+
+    handler.unloadPluginJar(jar);
+    assertNull(handler.findPlugin("Unload"));
+    awaitDestroyed(wrapper);
+    assertFalse(wrapper.getPluginJar().isLoaded());
+    return new WeakReference<>(classLoader);
+  }
+
+  private static void awaitDestroyed(PluginWrapper wrapper) throws InterruptedException
+  {
+    long deadline = System.currentTimeMillis() + GC_TIMEOUT;
+    while (wrapper.getPluginJar().isLoaded() && System.currentTimeMillis() < deadline)
+    {
+      Thread.sleep(10);
+    }
+  }
+
+  private File buildPluginJar() throws IOException
+  {
+    File sources = new File(directory, "src/unload");
+    File classes = new File(directory, "classes");
+    assertTrue(sources.mkdirs() && classes.mkdirs());
+    File source = new File(sources, "UnloadPlugin.java");
+    Files.write(source.toPath(), PLUGIN_SOURCE.getBytes(StandardCharsets.UTF_8));
+
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    assertNotNull("The tests need a JDK", compiler);
+    int result = compiler.run(null, null, null, "-classpath", System.getProperty("java.class.path"), "-d", classes.getPath(),
+        source.getPath());
+    assertEquals("The test plugin could not be compiled", 0, result);
+
+    File jar = new File(directory, "unload.jar");
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar)))
+    {
+      out.putNextEntry(new JarEntry("META-INF/services/" + ConverterPlugin.class.getName()));
+      out.write(PLUGIN_CLASS.getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+      out.putNextEntry(new JarEntry("unload/UnloadPlugin.class"));
+      copy(new File(classes, "unload/UnloadPlugin.class"), out);
+      out.closeEntry();
+    }
+    return jar;
+  }
+
+  private static void copy(File file, OutputStream out) throws IOException
+  {
+    out.write(Files.readAllBytes(file.toPath()));
+  }
+
+  private static void deleteRecursively(File file)
+  {
+    File[] children = file.listFiles();
+    if (children != null)
+    {
+      for (File child : Arrays.asList(children))
+      {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+}
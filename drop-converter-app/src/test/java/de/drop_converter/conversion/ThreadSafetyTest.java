@@ -0,0 +1,164 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.conversion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.StringSelection;
+import java.awt.datatransfer.Transferable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.JPanel;
+import javax.swing.TransferHandler.TransferSupport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.drop_converter.PluginHandler;
+import de.drop_converter.PluginWrapper;
+import de.drop_converter.plugin.ConverterPluginAdapter;
+import de.drop_converter.plugin.annotations.ConverterPluginDetails;
+
+/**
+ * A plugin that is not thread-safe must never convert on two threads at once, no matter if the jobs come from several
+ * drops or from a split drop. Thread-safe plugins run in parallel.
+ *
+ * @author Thomas Chojecki
+ */
+public class ThreadSafetyTest
+{
+  private static final int THREADS = 4;
+
+  private static final int JOBS = 8;
+
+  private PluginHandler handler;
+
+  private ConversionEngine engine;
+
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException
+  {
+    handler = new PluginHandler();
+    engine = new ConversionEngine(THREADS, JOBS, ConversionEngine.DIRECT_EXECUTOR);
+    directory = Files.createTempDirectory("thread-safety").toFile();
+  }
+
+  @After
+  public void tearDown()
+  {
+    engine.shutdown(10, TimeUnit.SECONDS);
+    handler.dispose();
+    for (File file : directory.listFiles())
+    {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  @Test
+  public void jobsOfSerialPluginDoNotOverlap() throws Exception
+  {
+    SerialPlugin plugin = new SerialPlugin();
+    convert(register(plugin), new StringSelection("drop"));
+    assertEquals(1, plugin.maxConcurrent.get());
+  }
+
+  @Test
+  public void splitDropsOfSerialPluginDoNotOverlap() throws Exception
+  {
+    SerialPlugin plugin = new SerialPlugin();
+    convert(register(plugin), new SnapshotTransferable(DataFlavor.javaFileListFlavor, createFiles()));
+    assertEquals(1, plugin.maxConcurrent.get());
+  }
+
+  @Test
+  public void jobsOfThreadSafePluginOverlap() throws Exception
+  {
+    ParallelPlugin plugin = new ParallelPlugin();
+    convert(register(plugin), new StringSelection("drop"));
+    assertTrue("A thread-safe plugin should convert in parallel", plugin.maxConcurrent.get() > 1);
+  }
+
+  private PluginWrapper register(ConverterPluginAdapter plugin) throws Exception
+  {
+    handler.registerPlugin(plugin);
+    PluginWrapper wrapper = handler.getPlugins().iterator().next();
+    wrapper.enablePlugin();
+    return wrapper;
+  }
+
+  private void convert(PluginWrapper plugin, Transferable data)
+  {
+    for (int i = 0; i < JOBS; i++)
+    {
+      assertTrue(engine.submit(new ConversionJob(plugin, new JPanel(), data), null));
+    }
+    assertTrue(engine.shutdown(30, TimeUnit.SECONDS));
+  }
+
+  private List<File> createFiles() throws IOException
+  {
+    List<File> files = new ArrayList<>();
+    for (int i = 0; i < JOBS; i++)
+    {
+      File file = new File(directory, "file" + i);
+      Files.write(file.toPath(), new byte[] { (byte) i });
+      files.add(file);
+    }
+    return files;
+  }
+
+  @ConverterPluginDetails(authorName = "test", pluginName = "Serial", pluginVersion = "1")
+  public static class SerialPlugin extends ConverterPluginAdapter
+  {
+    private final AtomicInteger running = new AtomicInteger();
+
+    final AtomicInteger maxConcurrent = new AtomicInteger();
+
+    @Override
+    public boolean canImport(TransferSupport support)
+    {
+      return true;
+    }
+
+    @Override
+    public boolean importData(TransferSupport support)
+    {
+      int now = running.incrementAndGet();
+      while (true)
+      {
+        int max = maxConcurrent.get();
+        if (now <= max || maxConcurrent.compareAndSet(max, now))
+        {
+          break;
+        }
+      }
+      try
+      {
+        Thread.sleep(20);
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+      running.decrementAndGet();
+      return true;
+    }
+  }
+
+  @ConverterPluginDetails(authorName = "test", pluginName = "Parallel", pluginVersion = "1", threadSafe = true)
+  public static class ParallelPlugin extends SerialPlugin
+  {}
+}
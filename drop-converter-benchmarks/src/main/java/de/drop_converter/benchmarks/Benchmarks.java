@@ -0,0 +1,76 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.jar.JarOutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+
+import de.drop_converter.PluginDiscovery;
+
+/**
+ * Helpers shared by the benchmarks.
+ *
+ * @author Thomas Chojecki
+ */
+final class Benchmarks
+{
+  // keep a reference, otherwise the level will be lost if the logger is garbage collected
+  private static final Logger CONVERTER_LOGGER = Logger.getLogger("de.drop_converter");
+
+  private Benchmarks()
+  {}
+
+  /**
+   * The converter logs every plugin state change, which would measure the console instead of the converter.
+   */
+  static void quietLogging()
+  {
+    CONVERTER_LOGGER.setLevel(Level.WARNING);
+  }
+
+  /**
+   * Create a plugin jar that only contains the registration of the <code>SyntheticPlugin</code>. The class itself
+   * will be loaded from the benchmark class path.
+   */
+  static void createPluginJar(File jar) throws IOException
+  {
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar)))
+    {
+      out.putNextEntry(new ZipEntry(PluginDiscovery.SERVICE_FILE));
+      out.write((SyntheticPlugin.class.getName() + '\n').getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+    }
+  }
+
+  static void delete(Path directory) throws IOException
+  {
+    Files.walkFileTree(directory, new SimpleFileVisitor<Path>()
+    {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+      {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException
+      {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+}
@@ -0,0 +1,97 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.benchmarks;
+
+import java.awt.datatransfer.DataFlavor;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.TransferHandler;
+import javax.swing.TransferHandler.TransferSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.drop_converter.PluginHandler;
+import de.drop_converter.PluginWrapper;
+import de.drop_converter.components.JDropableComponent;
+import de.drop_converter.components.JPluginComboBox;
+import de.drop_converter.conversion.ConversionEngine;
+import de.drop_converter.conversion.SnapshotTransferable;
+
+/**
+ * The <code>canImport</code> check of the drop area. It will be called several times in a second while the user drags
+ * something over the converter.
+ *
+ * @author Thomas Chojecki
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CanImportBenchmark
+{
+  private PluginHandler pluginHandler;
+
+  private ConversionEngine engine;
+
+  private TransferHandler transferHandler;
+
+  private PluginWrapper plugin;
+
+  private TransferSupport support;
+
+  @Setup
+  public void setup()
+  {
+    Benchmarks.quietLogging();
+    pluginHandler = new PluginHandler();
+    pluginHandler.registerPlugin(new SyntheticPlugin());
+    engine = new ConversionEngine(1, 1, ConversionEngine.DIRECT_EXECUTOR);
+
+    JPluginComboBox pluginChooser = new JPluginComboBox(pluginHandler);
+    JDropableComponent dropArea = new JDropableComponent(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), pluginChooser, engine);
+    transferHandler = dropArea.getTransferHandler();
+    plugin = (PluginWrapper) pluginChooser.getSelectedItem();
+    support = new TransferSupport(dropArea, new SnapshotTransferable(DataFlavor.javaFileListFlavor, Collections.singletonList(new File("drop.txt"))));
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    engine.shutdown(1, TimeUnit.SECONDS);
+    pluginHandler.dispose();
+  }
+
+  /**
+   * The check through the drop area, as Swing calls it during a drag.
+   */
+  @Benchmark
+  public boolean dispatch()
+  {
+    return transferHandler.canImport(support);
+  }
+
+  /**
+   * The check of the plugin itself, without the drop area.
+   */
+  @Benchmark
+  public boolean plugin()
+  {
+    return plugin.getPlugin().canImport(support);
+  }
+}
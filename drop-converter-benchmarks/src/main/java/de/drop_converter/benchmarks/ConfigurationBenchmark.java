@@ -0,0 +1,80 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.drop_converter.Configuration;
+import de.drop_converter.PluginWrapper;
+
+/**
+ * Read and write the settings file.
+ *
+ * @author Thomas Chojecki
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigurationBenchmark
+{
+  private File file;
+
+  private Configuration configuration;
+
+  @Setup
+  public void setup() throws IOException
+  {
+    Benchmarks.quietLogging();
+    file = File.createTempFile("settings", ".ini");
+
+    // a configuration like the one of a user with some disabled plugins
+    configuration = new Configuration(file);
+    List<PluginWrapper> plugins = new ArrayList<>();
+    for (int i = 0; i < 10; i++)
+    {
+      PluginWrapper plugin = new PluginWrapper(new SyntheticPlugin());
+      plugin.setPluginExcluded(true);
+      plugins.add(plugin);
+    }
+    configuration.setDisabledPlugins(plugins);
+    configuration.storeConfiguration();
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    file.delete();
+  }
+
+  @Benchmark
+  public Configuration load() throws IOException
+  {
+    return new Configuration(file);
+  }
+
+  @Benchmark
+  public void store() throws IOException
+  {
+    configuration.storeConfiguration();
+  }
+}
@@ -0,0 +1,128 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.drop_converter.PluginHandler;
+import de.drop_converter.PluginIndex;
+
+/**
+ * Register and load a number of plugins. Each operation creates a new <code>PluginHandler</code> and disposes it, so
+ * the destruction of the plugins is part of the measurement.
+ *
+ * @author Thomas Chojecki
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PluginHandlerBenchmark
+{
+  @Param({ "10", "100" })
+  private int plugins;
+
+  private SyntheticPlugin[] instances;
+
+  private Path directory;
+
+  private File pluginDirectory;
+
+  private File indexFile;
+
+  private File coldIndexFile;
+
+  @Setup
+  public void setup() throws IOException
+  {
+    Benchmarks.quietLogging();
+
+    instances = new SyntheticPlugin[plugins];
+    for (int i = 0; i < plugins; i++)
+    {
+      instances[i] = new SyntheticPlugin("Plugin " + i);
+    }
+
+    directory = Files.createTempDirectory("drop-converter-benchmark");
+    pluginDirectory = new File(directory.toFile(), "plugins");
+    pluginDirectory.mkdir();
+    for (int i = 0; i < plugins; i++)
+    {
+      Benchmarks.createPluginJar(new File(pluginDirectory, "plugin-" + i + ".jar"));
+    }
+
+    // build the index once, so the warm start does not need to open the jars
+    indexFile = new File(directory.toFile(), "plugin-index.properties");
+    PluginHandler handler = new PluginHandler();
+    handler.loadPlugins(pluginDirectory, new PluginIndex(indexFile));
+    handler.dispose();
+
+    coldIndexFile = new File(directory.toFile(), "cold-index.properties");
+  }
+
+  @TearDown
+  public void tearDown() throws IOException
+  {
+    Benchmarks.delete(directory);
+  }
+
+  @Benchmark
+  public int registerPlugin()
+  {
+    PluginHandler handler = new PluginHandler();
+    for (SyntheticPlugin plugin : instances)
+    {
+      handler.registerPlugin(plugin);
+    }
+    int size = handler.getPlugins().size();
+    handler.dispose();
+    return size;
+  }
+
+  /**
+   * Start without index, so every jar need to be opened, class loaded and indexed.
+   */
+  @Benchmark
+  public int loadPluginsCold()
+  {
+    coldIndexFile.delete();
+    PluginHandler handler = new PluginHandler();
+    handler.loadPlugins(pluginDirectory, new PluginIndex(coldIndexFile));
+    int size = handler.getPlugins().size();
+    handler.dispose();
+    return size;
+  }
+
+  /**
+   * Start with a valid index, the jars will not be opened.
+   */
+  @Benchmark
+  public int loadPluginsIndexed()
+  {
+    PluginHandler handler = new PluginHandler();
+    handler.loadPlugins(pluginDirectory, new PluginIndex(indexFile));
+    int size = handler.getPlugins().size();
+    handler.dispose();
+    return size;
+  }
+}
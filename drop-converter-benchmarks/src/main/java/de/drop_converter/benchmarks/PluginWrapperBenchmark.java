@@ -0,0 +1,89 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.drop_converter.PluginDescriptor;
+import de.drop_converter.PluginWrapper;
+import de.drop_converter.plugin.exception.InitializationException;
+
+/**
+ * The state transitions of a plugin.
+ *
+ * @author Thomas Chojecki
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PluginWrapperBenchmark
+{
+  private SyntheticPlugin plugin;
+
+  private PluginWrapper initialized;
+
+  private PluginDescriptor descriptor;
+
+  @Setup
+  public void setup() throws InitializationException
+  {
+    Benchmarks.quietLogging();
+    plugin = new SyntheticPlugin();
+    initialized = new PluginWrapper(plugin);
+    initialized.initializePlugin();
+    descriptor = PluginDescriptor.fromClass(SyntheticPlugin.class, plugin);
+  }
+
+  /**
+   * Switch the plugin on and off, like the plugin chooser does.
+   */
+  @Benchmark
+  public boolean enableDisable() throws InitializationException
+  {
+    initialized.enablePlugin();
+    initialized.disablePlugin();
+    return initialized.isPluginEnabled();
+  }
+
+  /**
+   * The whole life of an already created plugin.
+   */
+  @Benchmark
+  public boolean lifecycle() throws InitializationException
+  {
+    PluginWrapper wrapper = new PluginWrapper(plugin);
+    wrapper.initializePlugin();
+    wrapper.enablePlugin();
+    wrapper.disablePlugin();
+    wrapper.destroyPlugin();
+    return wrapper.isPluginInitialized();
+  }
+
+  /**
+   * The whole life of an indexed plugin, including loading and instantiating the class.
+   */
+  @Benchmark
+  public boolean lazyLifecycle() throws InitializationException
+  {
+    PluginWrapper wrapper = new PluginWrapper(descriptor, PluginWrapperBenchmark.class.getClassLoader());
+    wrapper.enablePlugin();
+    wrapper.disablePlugin();
+    wrapper.destroyPlugin();
+    return wrapper.isPluginInitialized();
+  }
+}
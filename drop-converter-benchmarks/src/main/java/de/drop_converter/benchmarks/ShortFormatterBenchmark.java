@@ -0,0 +1,68 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.drop_converter.logger.ShortFormatter;
+
+/**
+ * Format log records like the file handler of the converter does.
+ *
+ * @author Thomas Chojecki
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShortFormatterBenchmark
+{
+  private ShortFormatter formatter;
+
+  private LogRecord record;
+
+  private LogRecord parameterRecord;
+
+  @Setup
+  public void setup()
+  {
+    formatter = new ShortFormatter();
+
+    record = new LogRecord(Level.FINE, "Plugin enabled: Synthetic plugin");
+    record.setSourceClassName("de.drop_converter.PluginWrapper");
+    record.setSourceMethodName("enablePlugin");
+
+    parameterRecord = new LogRecord(Level.INFO, "Converted {0} of {1} items");
+    parameterRecord.setSourceClassName("de.drop_converter.headless.BatchConverter");
+    parameterRecord.setSourceMethodName("printSummary");
+    parameterRecord.setParameters(new Object[] { 42, 50 });
+  }
+
+  @Benchmark
+  public String format()
+  {
+    return formatter.format(record);
+  }
+
+  @Benchmark
+  public String formatWithParameters()
+  {
+    return formatter.format(parameterRecord);
+  }
+}
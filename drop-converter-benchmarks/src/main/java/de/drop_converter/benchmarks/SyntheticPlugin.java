@@ -0,0 +1,52 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.benchmarks;
+
+import java.awt.datatransfer.DataFlavor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.TransferHandler.TransferSupport;
+
+import de.drop_converter.plugin.ConverterPluginAdapter;
+
+/**
+ * A plugin that does nothing, so the benchmarks only measure the host. Each instance get its own name, because the
+ * plugins are identified by name.
+ *
+ * @author Thomas Chojecki
+ */
+public class SyntheticPlugin extends ConverterPluginAdapter
+{
+  private static final AtomicInteger COUNT = new AtomicInteger();
+
+  private final String name;
+
+  public SyntheticPlugin()
+  {
+    this("Synthetic plugin " + COUNT.incrementAndGet());
+  }
+
+  public SyntheticPlugin(String name)
+  {
+    this.name = name;
+  }
+
+  @Override
+  public boolean canImport(TransferSupport support)
+  {
+    return support.isDataFlavorSupported(DataFlavor.javaFileListFlavor);
+  }
+
+  @Override
+  public boolean importData(TransferSupport support)
+  {
+    return true;
+  }
+
+  @Override
+  public String toString()
+  {
+    return name;
+  }
+}
@@ -0,0 +1,52 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.plugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A single item of a drop, e.g. one file of a file list drop. The content is not loaded into memory, it can be read
+ * through a channel or stream that is opened on request.
+ * 
+ * @author Thomas Chojecki
+ */
+public interface DropItem
+{
+  /**
+   * @return the name of the item, e.g. the file name.
+   */
+  public String getName();
+
+  /**
+   * @return the size of the content in bytes or -1 if the size is unknown.
+   */
+  public long getSize();
+
+  /**
+   * Open a new channel to read the content. The caller need to close the channel.
+   * 
+   * @return a channel that is positioned at the start of the content.
+   * @throws IOException if the content could not be opened.
+   */
+  public ReadableByteChannel openChannel() throws IOException;
+
+  /**
+   * Open a new stream to read the content. The caller need to close the stream.
+   * 
+   * @return a stream that is positioned at the start of the content.
+   * @throws IOException if the content could not be opened.
+   */
+  public InputStream openStream() throws IOException;
+
+  /**
+   * Map the content read-only into memory. For dropped files the content will be read directly from the page cache
+   * without copying it into the heap. The caller need to close the view.
+   * 
+   * @return a read-only view of the content.
+   * @throws IOException if the content could not be mapped.
+   */
+  public MappedContent map() throws IOException;
+}
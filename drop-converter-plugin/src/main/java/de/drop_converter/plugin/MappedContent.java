@@ -0,0 +1,52 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.plugin;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * A read-only view of the content of a <code>{@link DropItem}</code> that is mapped into memory. A single
+ * <code>ByteBuffer</code> can not address more than 2 GB, so the content is split into chunks of
+ * {@link #getChunkSize()} bytes. Only the last chunk may be smaller.
+ * <p>
+ * The converter may share the mapping with other plugins that read the same file. The view need to be closed after
+ * usage, so the mapping can be released.
+ * </p>
+ * 
+ * @author Thomas Chojecki
+ */
+public interface MappedContent extends Closeable
+{
+  /**
+   * @return the size of the whole content in bytes.
+   */
+  public long getSize();
+
+  /**
+   * @return the size of each chunk in bytes.
+   */
+  public int getChunkSize();
+
+  /**
+   * @return the number of chunks.
+   */
+  public int getChunkCount();
+
+  /**
+   * Return a read-only buffer of a chunk. Each call returns a new buffer with an independent position, so the chunks
+   * can be read from several threads.
+   * 
+   * @param index is the index of the chunk, starting at 0.
+   * @return a read-only buffer with the content of the chunk.
+   * @throws IllegalStateException if the view was already closed.
+   */
+  public ByteBuffer getChunk(int index);
+
+  /**
+   * Release the view. The buffers returned by {@link #getChunk(int)} shall not be used afterwards.
+   */
+  @Override
+  public void close();
+}
@@ -0,0 +1,30 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.plugin;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Target for the converted data of a <code>{@link StreamingConverterPlugin}</code>. The converter decides where the
+ * data will be stored.
+ * 
+ * @author Thomas Chojecki
+ */
+public interface OutputSink
+{
+  /**
+   * Create a new output. Channels that are still open after the convert will be closed by the converter.
+   * <p>
+   * Write the outputs one after the other. A sink may close the previous output when a new one is created, e.g. the
+   * sink of a pipeline stage, which hands each output to the next stage. Writing to a closed output throws a
+   * <code>ClosedChannelException</code>.
+   * </p>
+   * 
+   * @param name is the name of the output, e.g. a file name without a path.
+   * @return a channel where the converted data can be written to.
+   * @throws IOException if the output could not be created.
+   */
+  public WritableByteChannel create(String name) throws IOException;
+}
@@ -0,0 +1,41 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.plugin;
+
+import javax.swing.TransferHandler.TransferSupport;
+
+import de.drop_converter.plugin.exception.ConverterException;
+
+/**
+ * <p>
+ * Optional interface for plugins that convert the dropped data as a stream. A plugin implementing this interface
+ * together with <code>{@link ConverterPlugin}</code> will not get the drop through
+ * {@link ConverterPlugin#importData(TransferSupport)}. Instead the converter hands over each dropped item separately,
+ * so large files can be converted in constant memory.
+ * </p>
+ * <p>
+ * {@link ConverterPlugin#canImport(TransferSupport)} is still used to decide if the plugin can handle the drop.
+ * </p>
+ * 
+ * @author Thomas Chojecki
+ */
+public interface StreamingConverterPlugin
+{
+  /**
+   * The recommended buffer size for reading and writing the data.
+   */
+  public final static int CHUNK_SIZE = 64 * 1024;
+
+  /**
+   * Convert a single dropped item.
+   * 
+   * @param item is the dropped item, e.g. one file of a file list.
+   * @param sink is the target for the converted data. Write the outputs one after the other, creating an output may
+   *          close the previous one.
+   * @return true if the item was converted.
+   * @throws ConverterException if an error occurred while converting the item. This will trigger a dialog, so the user
+   *           can see what goes wrong.
+   */
+  public boolean convert(DropItem item, OutputSink sink) throws ConverterException;
+}
@@ -0,0 +1,75 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package de.drop_converter.plugin;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import javax.swing.TransferHandler.TransferSupport;
+
+/**
+ * A abstract adapter class for streaming plugin implementation. Implements all optional functions and offer a helper
+ * to copy data in chunks.
+ * 
+ * @author Thomas Chojecki
+ */
+public abstract class StreamingConverterPluginAdapter extends ConverterPluginAdapter implements StreamingConverterPlugin
+{
+  // the copy buffer of each thread, allocating a direct buffer per call is more expensive than the copy itself
+  private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<>();
+
+  /**
+   * Will not be called for streaming plugins, the converter calls {@link #convert(DropItem, OutputSink)} instead.
+   */
+  @Override
+  public boolean importData(TransferSupport support)
+  {
+    return false;
+  }
+
+  /**
+   * Copy all remaining data from the source to the target in chunks of {@link StreamingConverterPlugin#CHUNK_SIZE}.
+   * The direct buffer is reused by later calls on the same thread.
+   * 
+   * @param in is the source channel.
+   * @param out is the target channel.
+   * @return the number of copied bytes.
+   * @throws IOException if reading or writing failed.
+   */
+  protected static long transfer(ReadableByteChannel in, WritableByteChannel out) throws IOException
+  {
+    ByteBuffer buffer = BUFFERS.get();
+    if (buffer == null)
+    {
+      buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+    }
+    else
+    {
+      // a nested transfer on the same thread gets its own buffer
+      BUFFERS.set(null);
+    }
+
+    try
+    {
+      long count = 0;
+      while (in.read(buffer) != -1)
+      {
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+          count += out.write(buffer);
+        }
+        buffer.clear();
+      }
+      return count;
+    }
+    finally
+    {
+      buffer.clear();
+      BUFFERS.set(buffer);
+    }
+  }
+}
@@ -37,4 +37,25 @@ public @interface ConverterPluginDetails {
   /** @return the website url as String of the plugin */
   String pluginWebsite() default "";
 
+  /**
+   * @return the MIME types the plugin can import, e.g. <code>text/plain</code>, <code>application/x-java-file-list</code>
+   *         or <code>application/x-java-serialized-object; class=java.lang.String</code>. A subtype of <code>*</code>
+   *         matches all subtypes. The converter uses them to route drops automatically to a capable plugin.
+   */
+  String[] mimeTypes() default {};
+
+  /**
+   * @return true if the plugin can convert several drops at the same time and converts each dropped file on its own.
+   *         The converter will then split a drop of many files into one drop per file and convert them in parallel.
+   *         Otherwise the plugin converts one drop after another, even if several drops arrive at once.
+   */
+  boolean threadSafe() default false;
+
+  /**
+   * @return true if the outputs of the plugin only depend on the name and content of the dropped item. The converter
+   *         will then keep the outputs and reuse them if the same item is dropped again. Only used for streaming plugins.
+   *         Increase the <code>pluginVersion</code> if the outputs change, so the kept outputs will be dropped.
+   */
+  boolean cacheable() default false;
+
 }